@@ -1,6 +1,7 @@
 plugins {
     id("java")
     id("jacoco")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 java {
@@ -37,4 +38,12 @@ tasks.jacocoTestReport {
         html.required.set(true)
         csv.required.set(true)
     }
-}
\ No newline at end of file
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    (findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+}
@@ -1,14 +1,10 @@
 (module rps (game))
 
+(def ai-guesses (table/define 1 'rock' 1 'paper' 1 'scissors'))
+
 (def game 
    (lambda (guess)
-      (def ai-roll (list/first (roll '1d3')))
-      (def ai-guess (cond 
-         ((isEqual 1 ai-roll) 'rock'    )
-         ((isEqual 2 ai-roll) 'paper'   )
-         ((isEqual 3 ai-roll) 'scissors')
-         (true                'panic'   )
-      ))
+      (def ai-guess (table/roll ai-guesses))
       
       (def game-result (cond
          ((isEqual guess ai-guess)            'Tie.' )   
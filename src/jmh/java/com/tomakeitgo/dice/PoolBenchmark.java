@@ -0,0 +1,54 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep-highest on {@code 100d20kh3} through the face-count sampler, against rolling every die and
+ * sorting, plus the exact distribution and the small {@code 4d6kh3} pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PoolBenchmark {
+    private final DiceExpression keepHighest = DiceProgram.compile("100d20kh3").getExpression();
+    private final DiceExpression smallPool = DiceProgram.compile("4d6kh3").getExpression();
+    private final DiceExpression exploding = DiceProgram.compile("10d6!").getExpression();
+    private final DiceExpression.Rand rand = new RandomStreams().split();
+    private final int[] dice = new int[100];
+
+    @Benchmark
+    public long keepHighest() {
+        return keepHighest.evalValue(rand);
+    }
+
+    @Benchmark
+    public long keepHighestBySorting() {
+        for (int i = 0; i < dice.length; i++) {
+            dice[i] = rand.random(20);
+        }
+        Arrays.sort(dice);
+        return dice[97] + dice[98] + dice[99];
+    }
+
+    @Benchmark
+    public long smallPool() {
+        return smallPool.evalValue(rand);
+    }
+
+    @Benchmark
+    public long exploding() {
+        return exploding.evalValue(rand);
+    }
+
+    @Benchmark
+    public double keepHighestDistribution() {
+        return Distribution.pool(100, 20, new DiceModifiers(0, false, DiceModifiers.Selection.KEEP_HIGHEST, 3)).mean();
+    }
+}
@@ -0,0 +1,61 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolls {@code 10d6} through the shared {@link Random} the roll operator used to hold, and through
+ * per-thread {@link RandomStreams}, at 1, 4 and 16 threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RandomBenchmark {
+    private static final Random shared = new Random();
+    private static final DiceExpression.Rand SHARED_RANDOM = side -> shared.nextInt(1, side + 1);
+
+    private final DiceExpression expression = DiceProgram.compile("10d6").getExpression();
+    private final RandomStreams streams = new RandomStreams();
+
+    @Benchmark
+    @Threads(1)
+    public long sharedRandom1() {
+        return expression.evalValue(SHARED_RANDOM);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long sharedRandom4() {
+        return expression.evalValue(SHARED_RANDOM);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long sharedRandom16() {
+        return expression.evalValue(SHARED_RANDOM);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long randomStreams1() {
+        return expression.evalValue(streams.current());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long randomStreams4() {
+        return expression.evalValue(streams.current());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long randomStreams16() {
+        return expression.evalValue(streams.current());
+    }
+}
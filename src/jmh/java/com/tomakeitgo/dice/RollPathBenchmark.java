@@ -0,0 +1,60 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Each stage of {@code (roll ...)} on its own: lexing, parsing the tokens, compiling text directly, and
+ * evaluating with and without the description, for a small, a medium and a pathological expression.
+ * Run with the GC profiler (configured in {@code build.gradle.kts}) for bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RollPathBenchmark {
+
+    // In the prefix grammar, so the lexer and parser read the same expression the compiler does.
+    @Param({"1d6", "+ 12d8 3d6 -4", "100000d100"})
+    public String expression;
+
+    private List<Lexer.Token> tokens;
+    private DiceExpression tree;
+    private final DiceExpression.Rand rand = new RandomStreams().split();
+
+    @Setup
+    public void prepare() {
+        tokens = new Lexer().lex(expression);
+        tree = new Parser().parse(tokens);
+    }
+
+    @Benchmark
+    public List<Lexer.Token> lex() {
+        return new Lexer().lex(expression);
+    }
+
+    @Benchmark
+    public DiceExpression parse() {
+        return new Parser().parse(tokens);
+    }
+
+    @Benchmark
+    public DiceExpression compile() {
+        return new Compiler().compile(expression);
+    }
+
+    @Benchmark
+    public long eval() {
+        return tree.eval(rand).value();
+    }
+
+    @Benchmark
+    public String evalDescribed() {
+        return tree.eval(rand).description();
+    }
+}
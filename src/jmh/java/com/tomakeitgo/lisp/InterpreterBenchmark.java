@@ -0,0 +1,116 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.dice.RandomStreams;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Interpreter#eval} on the shapes of program scripts are made of: recursion through lambdas,
+ * an imported module, list building, long {@code cond} chains and closures. Each benchmark evaluates an
+ * expression parsed once in setup, against definitions made once in setup, on each
+ * {@link Interpreter.Engine}, and either without a budget or under a {@link Budget} it never runs out of.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterpreterBenchmark {
+    private static final int COND_BRANCHES = 32;
+    private static final Budget BUDGET = new Budget(1_000_000_000, 60_000);
+
+    @Param
+    public Interpreter.Engine engine;
+
+    @Param({"false", "true"})
+    public boolean budgeted;
+
+    private Interpreter interpreter;
+    private SContext context;
+
+    private SExpression fib;
+    private SExpression rpsGame;
+    private SExpression rpsImport;
+    private SExpression buildList;
+    private SExpression condChain;
+    private SExpression closureFactory;
+    private SExpression closureCall;
+
+    @Setup
+    public void define() {
+        interpreter = new Interpreter(Path.of(System.getProperty("user.dir")), new RandomStreams(), engine);
+        context = interpreter.createSContext();
+
+        run("(def fib (lambda (n) (if (number/lt n 2) n (number/add (fib (number/sub n 1)) (fib (number/sub n 2))))))");
+        run("(import 'game/rps.lsp')");
+        run("(def build (lambda (n acc) (if (isEqual n 0) acc (build (number/sub n 1) (list/append acc n)))))");
+        run("(def make-thing (lambda (name) (lambda (option) (if (isEqual 'name' option) name 'unknown option'))))");
+        run("(def thing (make-thing 'will'))");
+
+        var pick = new StringBuilder("(def pick (lambda (x) (cond");
+        for (int i = 1; i <= COND_BRANCHES; i++) {
+            pick.append(" ((isEqual x ").append(i).append(") ").append(i).append(')');
+        }
+        run(pick.append(" (true 0))))").toString());
+
+        fib = parse("(fib 15)");
+        rpsGame = parse("(rps/game 'rock')");
+        rpsImport = parse("(import 'game/rps.lsp')");
+        buildList = parse("(build 100 ())");
+        condChain = parse("(pick " + COND_BRANCHES + ")");
+        closureFactory = parse("((make-thing 'will') 'name')");
+        closureCall = parse("(thing 'name')");
+    }
+
+    @Benchmark
+    public SExpression fib() {
+        return eval(fib);
+    }
+
+    @Benchmark
+    public SExpression rpsGame() {
+        return eval(rpsGame);
+    }
+
+    @Benchmark
+    public SExpression rpsImport() {
+        return eval(rpsImport);
+    }
+
+    @Benchmark
+    public SExpression listAppend() {
+        return eval(buildList);
+    }
+
+    @Benchmark
+    public SExpression condChain() {
+        return eval(condChain);
+    }
+
+    @Benchmark
+    public SExpression closureFactory() {
+        return eval(closureFactory);
+    }
+
+    @Benchmark
+    public SExpression closureCall() {
+        return eval(closureCall);
+    }
+
+    private SExpression eval(SExpression expression) {
+        return budgeted ? interpreter.eval(expression, context, BUDGET) : interpreter.eval(expression, context);
+    }
+
+    private void run(String program) {
+        for (SExpression expression : new Parser().parseAll(new Lexer().lex(program))) {
+            interpreter.eval(expression, context);
+        }
+    }
+
+    private static SExpression parse(String program) {
+        return new Parser().parse(new Lexer().lex(program));
+    }
+}
@@ -0,0 +1,31 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.Context;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What it costs to get to a prompt: building the root definitions, and the whole host {@link Context}
+ * with its startup definitions.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StartupBenchmark {
+    private final Interpreter interpreter = new Interpreter(Path.of(System.getProperty("user.dir")));
+
+    @Benchmark
+    public SContext createSContext() {
+        return interpreter.createSContext();
+    }
+
+    @Benchmark
+    public Context context() {
+        return new Context();
+    }
+}
@@ -10,13 +10,33 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
+/**
+ * The state of a session. Submitted commands are evaluated in order, one at a time, on a virtual thread
+ * of their own, so the threads reading keystrokes and drawing the screen never wait for the interpreter;
+ * the logs they read are safe to read while an evaluation writes to them.
+ */
 public class Context {
     private final Interpreter interpreter;
-    private boolean running = true;
+    private volatile boolean running = true;
     private final ArrayList<String> commands = new ArrayList<>();
-    private final ArrayList<String> consoleLog = new ArrayList<>();
-    private final ArrayList<String> commandOutput = new ArrayList<>();
+    private final List<String> consoleLog = new CopyOnWriteArrayList<>();
+    private final List<String> commandOutput = new CopyOnWriteArrayList<>();
+    private final ExecutorService evaluator = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("evaluator").factory());
+    // Evaluations not yet finished, including the one in progress.
+    private final ConcurrentLinkedQueue<FutureTask<Void>> pending = new ConcurrentLinkedQueue<>();
+    // The evaluation in progress, or null between evaluations.
+    private volatile FutureTask<Void> current;
+    // Changes to the screen asked for by an evaluation, made by the render thread before it next draws.
+    private final ConcurrentLinkedQueue<Runnable> screenChanges = new ConcurrentLinkedQueue<>();
+    // What each command may use, set with (budget steps ms).
+    private volatile Budget budget = Budget.UNLIMITED;
     private int activePane;
     private final List<Object> panes = new ArrayList<>();
     private final SContext root;
@@ -35,6 +55,8 @@ public class Context {
         
         contexts.put(new SExpression.SText("/"), root);
         active.register(new SExpression.SAtom("host/send"), new ContextCallBackOperator(this));
+        // An operator rather than a lambda, so changing the budget never needs any of it.
+        active.register(new SExpression.SAtom("budget"), (SExpression.Operator) (rest, i, definitions) -> setBudget(rest));
 
 
         interpreter.eval(parse("(def log (lambda (x) (host/send 'log' x)))"), active);
@@ -45,17 +67,70 @@ public class Context {
 
     public void shutdown() {
         running = false;
+        evaluator.shutdownNow();
     }
 
     public boolean isRunning() {
         return running;
     }
 
+    /**
+     * Evaluates {@code command} once every command queued before it has been evaluated. {@code (quit)}
+     * is the exception: it ends the session at once, without waiting behind a slow evaluation.
+     */
     public void queue(String command) {
         commands.add(command);
-        SExpression exp = parse(command);
+        if (isQuit(command)) {
+            shutdown();
+            return;
+        }
+        var evaluation = new FutureTask<Void>(() -> evaluate(command), null);
+        pending.add(evaluation);
+        // Removed only once run returns, so a cancelled evaluation counts as running until it has stopped.
+        evaluator.execute(() -> {
+            current = evaluation;
+            try {
+                evaluation.run();
+            } finally {
+                current = null;
+                // A cancel that raced with the end of the evaluation must not stop the next one.
+                Thread.interrupted();
+                pending.remove(evaluation);
+            }
+        });
+    }
+
+    /**
+     * Stops the evaluation in progress, if there is one, at its next lambda call. Commands queued after
+     * it are still evaluated, including one that has not yet started when this is called.
+     */
+    public void cancel() {
+        var evaluation = current;
+        if (evaluation != null) {
+            evaluation.cancel(true);
+        }
+    }
+
+    /**
+     * What the evaluator is doing, or null if it is idle.
+     */
+    public String getStatus() {
+        int count = pending.size();
+        if (count == 0) return null;
+        return count == 1
+                ? "running... (Esc to cancel)"
+                : "running... " + (count - 1) + " queued (Esc to cancel)";
+    }
 
-        var a = interpreter.eval(exp, active);
+    private void evaluate(String command) {
+        SExpression a;
+        try {
+            a = interpreter.eval(parse(command), active, budget);
+        } catch (CancellationException e) {
+            a = new SExpression.SError("Cancelled " + command);
+        } catch (RuntimeException | StackOverflowError e) {
+            a = new SExpression.SError(e.toString());
+        }
         if (a instanceof SExpression.SText text) {
             commandOutput.add(text.value());
         } else if (a != null) {
@@ -63,6 +138,14 @@ public class Context {
         }
     }
 
+    private static boolean isQuit(String command) {
+        try {
+            return parse(command) instanceof SExpression.SList list && list.value().equals(List.of(SExpression.SAtom.of("quit")));
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
     private static SExpression parse(String command) {
         return new Parser().parse(new Lexer().lex(command));
     }
@@ -75,11 +158,11 @@ public class Context {
         return commands;
     }
 
-    public ArrayList<String> getCommandOutput() {
+    public List<String> getCommandOutput() {
         return commandOutput;
     }
 
-    public ArrayList<String> getConsoleLog() {
+    public List<String> getConsoleLog() {
         return consoleLog;
     }
 
@@ -100,6 +183,29 @@ public class Context {
         this.activePane = (this.activePane + 1) % panes.size();
     }
 
+    private SExpression setBudget(List<SExpression> limits) {
+        if (limits.size() != 2 || !(limits.get(0) instanceof SExpression.SNumber steps) || !(limits.get(1) instanceof SExpression.SNumber millis)) {
+            return new SExpression.SError("budget requires a number of steps and of milliseconds");
+        }
+        try {
+            budget = new Budget(steps.value().longValueExact(), millis.value().longValueExact());
+        } catch (ArithmeticException | IllegalArgumentException e) {
+            return new SExpression.SError("budget requires whole numbers of steps and milliseconds of at least zero");
+        }
+        return new SExpression.SText("Budget set to " + steps + " steps and " + millis + " ms per command");
+    }
+
+    /**
+     * Makes every change to the screen an evaluation has asked for since the last call. Called by the
+     * thread that draws the screen.
+     */
+    public void applyScreenChanges() {
+        Runnable change;
+        while ((change = screenChanges.poll()) != null) {
+            change.run();
+        }
+    }
+
     public void setScreen(Screen screen) {
         this.screen = screen;
     }
@@ -139,25 +245,30 @@ public class Context {
                     );
                     return new SText("Context set to " + rest.get(1).toString());
                 } else if (text.equalsIgnoreCase("open") && rest.size() > 1 && rest.get(1) instanceof SText toOpen) {
-                    TabPane tabPane = context.screen.getTabPane();
                     Path resolvedPath = interpreter.getImportBaseDirectory().resolve(toOpen.value());
-                    context.setActivePane(tabPane);
-
-                    var existing = tabPane.findPanel(p ->
-                            p instanceof FileEditor fe && fe.getFilePath().equals(resolvedPath)
-                    );
-
-                    if (existing.isPresent()) {
-                        tabPane.setActive(existing.get());
-                    } else {
-                        FileEditor panel = new FileEditor(context, resolvedPath);
-                        tabPane.addTab(toOpen.value(), panel);
-                        tabPane.setActive(panel);
-                    }
+                    // This runs on the evaluator's thread, so the tabs are left to the thread that draws them.
+                    context.screenChanges.add(() -> open(toOpen.value(), resolvedPath));
                 }
             }
 
             return null;
         }
+
+        private void open(String name, Path resolvedPath) {
+            TabPane tabPane = context.screen.getTabPane();
+            context.setActivePane(tabPane);
+
+            var existing = tabPane.findPanel(p ->
+                    p instanceof FileEditor fe && fe.getFilePath().equals(resolvedPath)
+            );
+
+            if (existing.isPresent()) {
+                tabPane.setActive(existing.get());
+            } else {
+                FileEditor panel = new FileEditor(context, resolvedPath);
+                tabPane.addTab(name, panel);
+                tabPane.setActive(panel);
+            }
+        }
     }
 }
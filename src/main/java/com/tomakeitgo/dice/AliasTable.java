@@ -0,0 +1,79 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression.Rand;
+
+/**
+ * Vose's alias method: after an O(n) setup, picks index {@code i} with probability proportional to
+ * {@code weights[i]} using one uniform index and one coin flip, however many weights there are.
+ */
+public class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) throw new IllegalArgumentException("An alias table needs at least one weight");
+
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Weights must be finite and not negative");
+            }
+            total += weight;
+        }
+        if (total <= 0) throw new IllegalArgumentException("At least one weight must be positive");
+
+        probability = new double[n];
+        alias = new int[n];
+
+        double[] scaled = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small[smallSize++] = i;
+            } else {
+                large[largeSize++] = i;
+            }
+        }
+
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1;
+            if (scaled[more] < 1) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+        // Whatever is left is 1 up to rounding error.
+        while (largeSize > 0) {
+            int index = large[--largeSize];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+        while (smallSize > 0) {
+            int index = small[--smallSize];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+    }
+
+    public int size() {
+        return probability.length;
+    }
+
+    /**
+     * Returns an index between 0 and {@code size() - 1}.
+     */
+    public int sample(Rand rand) {
+        int column = rand.random(probability.length) - 1;
+        return rand.nextDouble() < probability[column] ? column : alias[column];
+    }
+}
@@ -0,0 +1,426 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.Arithmetic;
+import com.tomakeitgo.dice.Parser.BinaryOperator;
+import com.tomakeitgo.dice.Parser.Constant;
+import com.tomakeitgo.dice.Parser.Dice;
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import com.tomakeitgo.dice.Parser.ModifiedDice;
+import com.tomakeitgo.dice.Parser.Negate;
+import com.tomakeitgo.dice.Parser.Operand;
+import com.tomakeitgo.dice.Parser.Placeholder;
+import com.tomakeitgo.dice.Parser.SuccessPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive-descent compiler from dice expression text straight to an evaluable {@link DiceExpression}.
+ * <p>
+ * It reads the text once, left to right, converting digits to ints as it goes, and never builds a
+ * token list or copies text, except the name of a placeholder or a number not written the way
+ * {@link Integer#toString(int)} writes it.
+ * <p>
+ * Text is read as infix arithmetic with the usual precedence, such as {@code (2d6 + 3) * 2}. Text that starts with {@code +} or {@code -} followed by a space, or that is not valid infix, is read in
+ * the prefix grammar of {@link Parser}, exactly as {@link Lexer} followed by the original parser read it,
+ * so {@code 3d6 5} still rolls 3d6 and ignores the rest. Two spellings that were valid prefix now read
+ * differently: a leading {@code -} directly before dice negates them, so {@code -1d6} is -6 to -1
+ * rather than a pool of -1 dice, and text such as {@code 3d6 + 2} that only read as 3d6 now adds 2.
+ */
+public class Compiler {
+    private static final int END = 0;
+    private static final int D = 1;
+    private static final int DIGITS = 2;
+    private static final int NAME = 3;
+    private static final int PLUS = 4;
+    private static final int MINUS = 5;
+    private static final int TIMES = 6;
+    private static final int DIVIDE = 7;
+    private static final int OPEN = 8;
+    private static final int CLOSE = 9;
+
+    private CharSequence source;
+    private List<String> placeholders;
+    private int position;
+    private boolean infix;
+
+    // The most recently scanned token.
+    private int type;
+    private int start;
+    private int value;
+    // Whether the digits just scanned are exactly Integer.toString(value), so their text need not be kept.
+    private boolean writtenAsValue;
+
+    public DiceExpression compile(CharSequence source) {
+        return compile(source, new ArrayList<>());
+    }
+
+    /**
+     * Compiles {@code source}, collecting placeholder names into {@code placeholders} in the order they
+     * first appear.
+     *
+     * @throws IllegalArgumentException when an operator is followed by something that is not a value
+     *                                  or the text does not start with an expression
+     */
+    public DiceExpression compile(CharSequence source, List<String> placeholders) {
+        this.source = source == null ? "" : source;
+        this.placeholders = placeholders;
+        this.position = 0;
+
+        int sign = leadingSign();
+        if (sign >= 0 && (sign + 1 == this.source.length() || Character.isWhitespace(this.source.charAt(sign + 1)))) {
+            return prefix();
+        }
+        // Text that is not valid infix, such as 3d6 5 or +1d4 1, was a prefix expression before infix
+        // arithmetic, so it still is.
+        int known = placeholders.size();
+        try {
+            return infix();
+        } catch (IllegalArgumentException e) {
+            placeholders.subList(known, placeholders.size()).clear();
+            position = 0;
+            try {
+                return prefix();
+            } catch (IllegalArgumentException prefixError) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Compiles {@code source} in the prefix grammar alone, as the original parser read it, whatever it
+     * starts with.
+     */
+    DiceExpression compilePrefix(CharSequence source, List<String> placeholders) {
+        this.source = source == null ? "" : source;
+        this.placeholders = placeholders;
+        this.position = 0;
+        return prefix();
+    }
+
+    private DiceExpression prefix() {
+        infix = false;
+        if (peek() == END) {
+            return new Constant("", 0);
+        }
+        // Like the parser, only the first expression is read and anything after it is ignored.
+        return expression();
+    }
+
+    private DiceExpression infix() {
+        infix = true;
+        if (peek() == END) {
+            return new Constant("", 0);
+        }
+        var expression = sum();
+        if (peek() != END) {
+            scan();
+            throw new IllegalArgumentException("Unexpected '" + source.charAt(start) + "' at position " + start + " of '" + source + "'");
+        }
+        return expression;
+    }
+
+    /**
+     * Position of the {@code +} or {@code -} the text starts with, ignoring what the scanner skips, or -1.
+     */
+    private int leadingSign() {
+        int length = source.length();
+        for (int i = 0; i < length; i++) {
+            char c = source.charAt(i);
+            if (c == '+' || c == '-') return i;
+            if (Character.isLetterOrDigit(c) || "*/()".indexOf(c) >= 0) return -1;
+        }
+        return -1;
+    }
+
+    private DiceExpression sum() {
+        var expression = product();
+        while (true) {
+            int next = peek();
+            if (next != PLUS && next != MINUS) return expression;
+            scan();
+            expression = new Arithmetic(next == PLUS ? '+' : '-', expression, product());
+        }
+    }
+
+    private DiceExpression product() {
+        var expression = unary();
+        while (true) {
+            int next = peek();
+            if (next != TIMES && next != DIVIDE) return expression;
+            scan();
+            expression = new Arithmetic(next == TIMES ? '*' : '/', expression, unary());
+        }
+    }
+
+    private DiceExpression unary() {
+        int next = peek();
+        if (next == MINUS) {
+            scan();
+            return new Negate(unary());
+        }
+        if (next == PLUS) {
+            scan();
+            return unary();
+        }
+        return primary();
+    }
+
+    private DiceExpression primary() {
+        int at = position;
+        if (peek() == OPEN) {
+            scan();
+            var expression = sum();
+            if (scan() != CLOSE) {
+                throw new IllegalArgumentException("Expected ')' at position " + start + " of '" + source + "'");
+            }
+            return expression;
+        }
+        var value = value();
+        if (value == null) {
+            throw new IllegalArgumentException("Expected a dice expression at position " + at + " of '" + source + "'");
+        }
+        return value;
+    }
+
+    private DiceExpression expression() {
+        int at = position;
+        int next = peek();
+        if (next == PLUS || next == MINUS) {
+            scan();
+            var items = new ArrayList<DiceExpression>();
+            DiceExpression item;
+            while ((item = value()) != null) {
+                items.add(item);
+            }
+            if (peek() != END) {
+                items.add(expression());
+            }
+            return next == PLUS
+                    ? new BinaryOperator("+", Math::addExact, items)
+                    : new BinaryOperator("-", Math::subtractExact, items);
+        }
+        var item = value();
+        if (item == null) {
+            throw new IllegalArgumentException("Expected a dice expression at position " + at + " of '" + source + "'");
+        }
+        return item;
+    }
+
+    /**
+     * dice or constant, or null without consuming anything when the next token starts neither.
+     */
+    private DiceExpression value() {
+        int before = position;
+        int next = scan();
+        if (infix && next == D) {
+            // d6 on its own is one die.
+            if (isOperand(scan())) {
+                return dice(Operand.of(1), operand());
+            }
+            position = before;
+            return null;
+        }
+        if (!isOperand(next)) {
+            position = before;
+            return null;
+        }
+        var first = operand();
+
+        int afterFirst = position;
+        if (scan() == D) {
+            if (isOperand(scan())) {
+                return dice(first, operand());
+            }
+        }
+        position = afterFirst;
+
+        if (first.isPlaceholder()) {
+            return new Placeholder(first);
+        }
+        return new Constant(first);
+    }
+
+    private DiceExpression dice(Operand count, Operand sides) {
+        var modifiers = modifiers();
+        var comparison = comparison();
+        if (comparison != null) {
+            if (!modifiers.isNone()) {
+                throw new IllegalArgumentException("A success pool cannot take dice modifiers in '" + source + "'");
+            }
+            int at = position;
+            if (!isOperand(scan())) {
+                throw new IllegalArgumentException("Expected a target at position " + at + " of '" + source + "'");
+            }
+            return new SuccessPool(count, sides, comparison, operand());
+        }
+        return modifiers.isNone() ? new Dice(count, sides) : new ModifiedDice(count, sides, modifiers);
+    }
+
+    /**
+     * Modifiers written directly after the sides of a die, each at most once and in any order. Letters
+     * that do not spell a modifier followed by digits are left for the scanner.
+     */
+    private DiceModifiers modifiers() {
+        int reroll = 0;
+        boolean explode = false;
+        var selection = DiceModifiers.Selection.ALL;
+        int amount = 0;
+
+        while (position < source.length()) {
+            int at = position;
+            char c = Character.toLowerCase(source.charAt(position));
+            char next = position + 1 < source.length() ? Character.toLowerCase(source.charAt(position + 1)) : 0;
+            if (c == '!') {
+                if (explode) throw duplicate(at);
+                explode = true;
+                position++;
+                continue;
+            }
+
+            DiceModifiers.Selection modifierSelection = null;
+            int letters = 1;
+            if (c == 'k' && (next == 'h' || next == 'l')) {
+                modifierSelection = next == 'h' ? DiceModifiers.Selection.KEEP_HIGHEST : DiceModifiers.Selection.KEEP_LOWEST;
+                letters = 2;
+            } else if (c == 'k') {
+                modifierSelection = DiceModifiers.Selection.KEEP_HIGHEST;
+            } else if (c == 'd' && (next == 'h' || next == 'l')) {
+                modifierSelection = next == 'h' ? DiceModifiers.Selection.DROP_HIGHEST : DiceModifiers.Selection.DROP_LOWEST;
+                letters = 2;
+            } else if (c != 'r') {
+                break;
+            }
+            if (position + letters >= source.length() || !isAsciiDigit(source.charAt(position + letters))) {
+                break;
+            }
+
+            position += letters;
+            scan();
+            if (modifierSelection == null) {
+                if (reroll > 0) throw duplicate(at);
+                reroll = value;
+            } else {
+                if (selection != DiceModifiers.Selection.ALL) throw duplicate(at);
+                selection = modifierSelection;
+                amount = value;
+            }
+        }
+        return new DiceModifiers(reroll, explode, selection, amount);
+    }
+
+    /**
+     * A comparison written directly after a die, turning it into a success pool, or null.
+     */
+    private SuccessPool.Comparison comparison() {
+        if (position >= source.length()) return null;
+        char c = source.charAt(position);
+        boolean orEqual = position + 1 < source.length() && source.charAt(position + 1) == '=';
+        SuccessPool.Comparison comparison = switch (c) {
+            case '>' -> orEqual ? SuccessPool.Comparison.AT_LEAST : SuccessPool.Comparison.MORE_THAN;
+            case '<' -> orEqual ? SuccessPool.Comparison.AT_MOST : SuccessPool.Comparison.LESS_THAN;
+            case '=' -> SuccessPool.Comparison.EQUAL_TO;
+            default -> null;
+        };
+        if (comparison != null) {
+            position += comparison.getSymbol().length();
+        }
+        return comparison;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private IllegalArgumentException duplicate(int at) {
+        return new IllegalArgumentException("Dice modifier repeated at position " + at + " of '" + source + "'");
+    }
+
+    private static boolean isOperand(int type) {
+        return type == DIGITS || type == NAME;
+    }
+
+    // The operand just scanned. Only a placeholder, or a number not written the usual way, copies its text.
+    private Operand operand() {
+        if (type == NAME) {
+            var text = String.valueOf(source.charAt(start));
+            int slot = placeholders.indexOf(text);
+            if (slot < 0) {
+                slot = placeholders.size();
+                placeholders.add(text);
+            }
+            return new Operand(text, 0, slot);
+        }
+        return writtenAsValue ? Operand.of(value) : new Operand(source.subSequence(start, position).toString(), value, -1);
+    }
+
+    private int peek() {
+        int before = position;
+        int next = scan();
+        position = before;
+        return next;
+    }
+
+    /**
+     * Reads the next token, skipping whitespace and characters the lexer ignores.
+     */
+    private int scan() {
+        int length = source.length();
+        while (position < length) {
+            char c = source.charAt(position);
+            start = position;
+            if (c == 'd' || c == 'D') {
+                position++;
+                return type = D;
+            } else if (c == '-') {
+                position++;
+                if (!infix && position < length && Character.isDigit(source.charAt(position))) {
+                    return digits(true);
+                }
+                return type = MINUS;
+            } else if (c == '+') {
+                position++;
+                return type = PLUS;
+            } else if (Character.isDigit(c)) {
+                return digits(false);
+            } else if (Character.isLetter(c)) {
+                position++;
+                return type = NAME;
+            } else if (infix && "*/()".indexOf(c) >= 0) {
+                position++;
+                return type = switch (c) {
+                    case '*' -> TIMES;
+                    case '/' -> DIVIDE;
+                    case '(' -> OPEN;
+                    default -> CLOSE;
+                };
+            }
+            position++;
+        }
+        start = position;
+        return type = END;
+    }
+
+    private int digits(boolean negative) {
+        int length = source.length();
+        int first = position;
+        boolean ascii = true;
+        long total = 0;
+        while (position < length && Character.isDigit(source.charAt(position))) {
+            char c = source.charAt(position);
+            ascii &= isAsciiDigit(c);
+            total = total * 10 + Character.digit(c, 10);
+            if (total > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Number too large at position " + start + " of '" + source + "'");
+            }
+            position++;
+        }
+        total = negative ? -total : total;
+        if (total > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number too large at position " + start + " of '" + source + "'");
+        }
+        value = (int) total;
+        writtenAsValue = ascii && (source.charAt(first) != '0' || position - first == 1) && !(negative && total == 0);
+        return type = DIGITS;
+    }
+}
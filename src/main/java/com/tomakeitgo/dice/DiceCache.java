@@ -0,0 +1,97 @@
+package com.tomakeitgo.dice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread-safe least-recently-used cache of compiled dice programs keyed by their canonical form,
+ * so {@code + 3d6 2d6} and {@code + 2d6 3d6} share one program. Each spelling seen is remembered with
+ * the key it normalised to, so repeated text is found without compiling it again.
+ */
+public class DiceCache {
+    public static final int DEFAULT_CAPACITY = 256;
+    public static final DiceCache SHARED = new DiceCache(DEFAULT_CAPACITY);
+
+    private final int capacity;
+    private final LinkedHashMap<String, DiceProgram> programs;
+    private final LinkedHashMap<String, String> spellings;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DiceCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be at least 1");
+        this.capacity = capacity;
+        this.programs = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DiceProgram> eldest) {
+                if (size() > DiceCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.spellings = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > DiceCache.this.capacity * 4;
+            }
+        };
+    }
+
+    public DiceProgram compile(String source) {
+        String text = source == null ? "" : source;
+        synchronized (programs) {
+            var key = spellings.get(text);
+            var program = key == null ? null : programs.get(key);
+            if (program != null) {
+                hits.increment();
+                return program;
+            }
+        }
+
+        // Compile outside the lock; two threads missing on the same text both compile and the first one wins.
+        var compiled = DiceProgram.compile(text);
+        var key = key(compiled);
+        synchronized (programs) {
+            spellings.put(text, key);
+            // Compiling was a miss even when another spelling had already put the same program here.
+            misses.increment();
+            var existing = programs.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            programs.put(key, compiled);
+            return compiled;
+        }
+    }
+
+    /**
+     * Programs with the same canonical text only share when they also bind their placeholders in the
+     * same order.
+     */
+    private static String key(DiceProgram program) {
+        if (program.getPlaceholders().isEmpty()) return program.getCanonical();
+        return program.getCanonical() + " " + program.getPlaceholders();
+    }
+
+    public void clear() {
+        synchronized (programs) {
+            programs.clear();
+            spellings.clear();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (programs) {
+            size = programs.size();
+        }
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), size, capacity);
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, int capacity) {
+    }
+}
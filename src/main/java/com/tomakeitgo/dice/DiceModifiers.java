@@ -0,0 +1,103 @@
+package com.tomakeitgo.dice;
+
+/**
+ * What happens to a pool of dice after it is rolled, written after the sides as in {@code 4d6kh3}.
+ * <ul>
+ *     <li>{@code rN} rerolls any die showing N or less until it shows more, so {@code 8d6r1} never keeps a 1</li>
+ *     <li>{@code !} rolls a die again and adds the result whenever it shows its highest face, at most
+ *     {@link #MAX_EXPLOSIONS} times per die</li>
+ *     <li>{@code khN} / {@code kN} keeps the N highest dice, {@code klN} the N lowest, {@code dhN} and
+ *     {@code dlN} drop the N highest or lowest</li>
+ * </ul>
+ * Rerolls apply to every roll of a die, explosions included, and the selection applies to the exploded
+ * totals.
+ *
+ * @param reroll    highest face that is rerolled, 0 for none
+ * @param explode   whether dice showing their highest face explode
+ * @param selection which dice count towards the total
+ * @param amount    how many dice the selection keeps or drops
+ */
+public record DiceModifiers(int reroll, boolean explode, Selection selection, int amount) {
+    /**
+     * Most times a single die explodes, which keeps {@code 1d1!} finite and exact distributions small.
+     */
+    public static final int MAX_EXPLOSIONS = 20;
+
+    public static final DiceModifiers NONE = new DiceModifiers(0, false, Selection.ALL, 0);
+
+    public enum Selection {
+        ALL(""),
+        KEEP_HIGHEST("kh"),
+        KEEP_LOWEST("kl"),
+        DROP_HIGHEST("dh"),
+        DROP_LOWEST("dl");
+
+        private final String symbol;
+
+        Selection(String symbol) {
+            this.symbol = symbol;
+        }
+    }
+
+    public DiceModifiers {
+        if (reroll < 0) throw new IllegalArgumentException("Cannot reroll faces below 1");
+        if (amount < 0) throw new IllegalArgumentException("Cannot keep or drop a negative number of dice");
+    }
+
+    public boolean isNone() {
+        return equals(NONE);
+    }
+
+    /**
+     * Number of dice out of {@code count} that count towards the total.
+     */
+    public int kept(int count) {
+        if (count <= 0) return 0;
+        int amount = Math.min(this.amount, count);
+        return switch (selection) {
+            case ALL -> count;
+            case KEEP_HIGHEST, KEEP_LOWEST -> amount;
+            case DROP_HIGHEST, DROP_LOWEST -> count - amount;
+        };
+    }
+
+    /**
+     * Whether the kept dice are the highest ones, as opposed to the lowest.
+     */
+    public boolean keepsHighest() {
+        return selection == Selection.KEEP_HIGHEST || selection == Selection.DROP_LOWEST;
+    }
+
+    /**
+     * Throws unless a die with {@code sides} sides can be rolled under these modifiers.
+     */
+    public void check(int sides) {
+        if (sides < 1) throw new IllegalArgumentException("A die needs at least one side");
+        if (reroll >= sides) {
+            throw new IllegalArgumentException("r" + reroll + " would reroll every face of a D" + sides);
+        }
+    }
+
+    /**
+     * Lowest value a single modified die can show.
+     */
+    public long dieMin() {
+        return reroll + 1;
+    }
+
+    /**
+     * Highest value a single modified die can show.
+     */
+    public long dieMax(int sides) {
+        return explode ? (long) sides * (MAX_EXPLOSIONS + 1) : sides;
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        if (reroll > 0) text.append('r').append(reroll);
+        if (explode) text.append('!');
+        if (selection != Selection.ALL) text.append(selection.symbol).append(amount);
+        return text.toString();
+    }
+}
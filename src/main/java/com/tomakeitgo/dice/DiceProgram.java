@@ -0,0 +1,134 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A dice expression that has been compiled once and can be evaluated any number of times.
+ * Placeholders (single letters such as {@code N} in {@code + Nd6 M}) are bound per evaluation, in the
+ * order they first appear in the source text.
+ * <p>
+ * Compiling normalises the expression (see {@link Normalizer}), so a program rolls and describes its
+ * canonical form: {@code + 3d6 2d6 5 1} rolls as {@code + 5D6(17) 6}.
+ */
+public class DiceProgram {
+    private final String source;
+    private final DiceExpression expression;
+    private final List<String> placeholders;
+    private final String canonical;
+    private volatile Distribution distribution;
+    private volatile double mean = Double.NaN;
+
+    public DiceProgram(String source, DiceExpression expression, List<String> placeholders) {
+        this.source = source;
+        this.expression = expression;
+        this.placeholders = List.copyOf(placeholders);
+        this.canonical = expression instanceof Parser.Sum sum ? Normalizer.canonical(sum) : source;
+    }
+
+    public static DiceProgram compile(String source) {
+        var placeholders = new ArrayList<String>();
+        var expression = new Compiler().compile(source, placeholders);
+        return new DiceProgram(source, Normalizer.normalize(expression), placeholders);
+    }
+
+    public DiceExpression.Result eval(DiceExpression.Rand rand, int... arguments) {
+        checkArguments(arguments);
+        return expression.eval(rand, arguments);
+    }
+
+    /**
+     * Rolls the program {@code n} times into {@code out[0..n)}.
+     */
+    public void evalMany(DiceExpression.Rand rand, int n, int[] out, int... arguments) {
+        checkArguments(arguments);
+        if (n < 0 || n > out.length) {
+            throw new IllegalArgumentException("Cannot write " + n + " rolls into an array of " + out.length);
+        }
+        expression.evalMany(rand, n, out, arguments);
+    }
+
+    private void checkArguments(int[] arguments) {
+        if (arguments.length != placeholders.size()) {
+            throw new IllegalArgumentException(
+                    "Expected " + placeholders.size() + " arguments for " + placeholders + " but got " + arguments.length
+            );
+        }
+    }
+
+    /**
+     * Exact distribution of the program, computed on first use and kept with the program.
+     */
+    public Distribution distribution() {
+        if (!placeholders.isEmpty()) {
+            throw new IllegalStateException("Cannot compute a distribution with unbound placeholders " + placeholders);
+        }
+        var result = distribution;
+        if (result == null) {
+            result = Distribution.of(expression);
+            distribution = result;
+        }
+        return result;
+    }
+
+    /**
+     * Expected value of the program, from the means of its terms, so pools too large for an exact
+     * distribution still have one.
+     */
+    public double mean() {
+        if (!placeholders.isEmpty()) {
+            throw new IllegalStateException("Cannot compute a mean with unbound placeholders " + placeholders);
+        }
+        double result = mean;
+        if (Double.isNaN(result)) {
+            result = mean(expression);
+            mean = result;
+        }
+        return result;
+    }
+
+    private static double mean(DiceExpression expression) {
+        return switch (expression) {
+            case Parser.Sum sum -> {
+                double total = sum.getConstant();
+                for (DiceExpression term : sum.getAdded()) total += mean(term);
+                for (DiceExpression term : sum.getSubtracted()) total -= mean(term);
+                yield total;
+            }
+            case Parser.Dice dice -> Math.max(dice.getCount().value(), 0) * (dice.getSides().value() + 1) / 2.0;
+            case Parser.ModifiedDice dice when dice.getModifiers().kept(dice.getCount().value()) == dice.getCount().value() ->
+                    dice.getCount().value() * Distribution.die(dice.getSides().value(), dice.getModifiers()).mean();
+            default -> Distribution.of(expression).mean();
+        };
+    }
+
+    /**
+     * The normalised expression as text, shared by every equivalent spelling of the program.
+     */
+    public String getCanonical() {
+        return canonical;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public DiceExpression getExpression() {
+        return expression;
+    }
+
+    public List<String> getPlaceholders() {
+        return placeholders;
+    }
+
+    @Override
+    public String toString() {
+        return "DiceProgram{" +
+                "source='" + source + '\'' +
+                ", canonical='" + canonical + '\'' +
+                ", placeholders=" + placeholders +
+                '}';
+    }
+}
@@ -0,0 +1,300 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression.Rand;
+
+/**
+ * Sums of many dice without one random draw per die.
+ * <p>
+ * Large pools are rolled as face counts: the number of ones is binomial over the whole pool, the
+ * number of twos is binomial over what is left, and so on, so {@code 1000000d6} costs five binomial
+ * draws. Each draw is exact, inversion for small means and BTPE (Kachitvichyanukul and Schmeiser)
+ * otherwise.
+ */
+public class DiceSampler {
+    /**
+     * Pools of at most this many dice are rolled one die at a time.
+     */
+    public static final int LOOP_LIMIT = 48;
+
+    /**
+     * Fixed pools whose sum has at most this many possible values are sampled from an alias table.
+     */
+    public static final int ALIAS_SUPPORT_LIMIT = 1 << 14;
+
+    /**
+     * Sum of {@code count} dice with {@code sides} sides.
+     */
+    public static long sum(Rand rand, int count, int sides) {
+        if (count <= LOOP_LIMIT || sides >= count) {
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                total += rand.random(sides);
+            }
+            return total;
+        }
+        return sumOfFaceCounts(rand, count, sides);
+    }
+
+    static long sumOfFaceCounts(Rand rand, int count, int sides) {
+        long total = 0;
+        int remaining = count;
+        for (int face = 1; face < sides && remaining > 0; face++) {
+            int rolled = binomial(rand, remaining, 1.0 / (sides - face + 1));
+            total += (long) face * rolled;
+            remaining -= rolled;
+        }
+        return total + (long) sides * remaining;
+    }
+
+    /**
+     * Total of {@code count} dice with {@code sides} sides after applying {@code modifiers}.
+     * <p>
+     * Rerolls shift the die rather than looping, since a die rerolled until it shows more than N is a
+     * die over the faces above N. Selections never sort: large plain pools walk face counts down from
+     * the best face until enough dice are kept, and everything else keeps a heap of whichever of the
+     * kept or dropped dice is smaller.
+     */
+    public static long pool(Rand rand, int count, int sides, DiceModifiers modifiers) {
+        modifiers.check(sides);
+        if (count <= 0) return 0;
+
+        int low = modifiers.reroll();
+        int faces = sides - low;
+        int kept = modifiers.kept(count);
+        if (kept == 0) return 0;
+
+        if (!modifiers.explode()) {
+            if (kept == count) return (long) count * low + sum(rand, count, faces);
+            if (count > LOOP_LIMIT) {
+                return (long) kept * low + keptOfFaceCounts(rand, count, faces, kept, modifiers.keepsHighest());
+            }
+        }
+
+        // Track the smaller side of the split; the total of the other side is what is left.
+        boolean trackKept = kept <= count - kept;
+        boolean trackHighest = trackKept == modifiers.keepsHighest();
+        var tracked = new Heap(trackKept ? kept : count - kept, trackHighest);
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            long die = die(rand, sides, low, modifiers.explode());
+            total += die;
+            tracked.offer(die);
+        }
+        return trackKept ? tracked.sum() : total - tracked.sum();
+    }
+
+    private static long die(Rand rand, int sides, int low, boolean explode) {
+        int faces = sides - low;
+        long face = low + rand.random(faces);
+        long total = face;
+        for (int explosions = 0; explode && face == sides && explosions < DiceModifiers.MAX_EXPLOSIONS; explosions++) {
+            face = low + rand.random(faces);
+            total += face;
+        }
+        return total;
+    }
+
+    /**
+     * Sum of the {@code kept} highest (or lowest) of {@code count} dice, drawing the number of dice
+     * showing each face from the best face down and stopping once enough have been kept.
+     */
+    static long keptOfFaceCounts(Rand rand, int count, int sides, int kept, boolean highest) {
+        long total = 0;
+        int remaining = count;
+        int needed = kept;
+        for (int step = 0; step < sides && needed > 0; step++) {
+            int face = highest ? sides - step : step + 1;
+            int rolled = step == sides - 1 ? remaining : binomial(rand, remaining, 1.0 / (sides - step));
+            int taken = Math.min(rolled, needed);
+            total += (long) face * taken;
+            needed -= taken;
+            remaining -= rolled;
+        }
+        return total;
+    }
+
+    /**
+     * The {@code size} highest (or lowest) values offered so far, as a binary heap whose root is the
+     * worst of them.
+     */
+    private static class Heap {
+        private final long[] values;
+        private final boolean highest;
+        private int size;
+
+        Heap(int capacity, boolean highest) {
+            this.values = new long[capacity];
+            this.highest = highest;
+        }
+
+        void offer(long value) {
+            if (values.length == 0) return;
+            if (size < values.length) {
+                int i = size++;
+                values[i] = value;
+                while (i > 0 && worse(values[i], values[(i - 1) / 2])) {
+                    swap(i, (i - 1) / 2);
+                    i = (i - 1) / 2;
+                }
+            } else if (worse(values[0], value)) {
+                values[0] = value;
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) break;
+                    if (child + 1 < size && worse(values[child + 1], values[child])) child++;
+                    if (!worse(values[child], values[i])) break;
+                    swap(i, child);
+                    i = child;
+                }
+            }
+        }
+
+        private boolean worse(long a, long b) {
+            return highest ? a < b : a > b;
+        }
+
+        private void swap(int i, int j) {
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+
+        long sum() {
+            long total = 0;
+            for (int i = 0; i < size; i++) total += values[i];
+            return total;
+        }
+    }
+
+    /**
+     * Alias table over the exact sum of a fixed pool, or null when the pool is small enough to loop
+     * or its sum has too many possible values.
+     */
+    static AliasTable aliasTable(int count, int sides) {
+        if (count <= LOOP_LIMIT || sides < 1) return null;
+        if ((long) count * (sides - 1) + 1 > ALIAS_SUPPORT_LIMIT) return null;
+        return new AliasTable(Distribution.dice(count, sides).probabilities());
+    }
+
+    /**
+     * Number of successes in {@code n} trials that each succeed with probability {@code p}.
+     */
+    public static int binomial(Rand rand, int n, double p) {
+        if (n <= 0 || p <= 0) return 0;
+        if (p >= 1) return n;
+        if (p > 0.5) return n - binomial(rand, n, 1 - p);
+        if (n * p <= 30) return binomialInversion(rand, n, p);
+        return binomialBtpe(rand, n, p);
+    }
+
+    private static int binomialInversion(Rand rand, int n, double p) {
+        double q = 1 - p;
+        double qn = Math.exp(n * Math.log(q));
+        double np = n * p;
+        double bound = Math.min(n, np + 10 * Math.sqrt(np * q + 1));
+
+        int x = 0;
+        double px = qn;
+        double u = rand.nextDouble();
+        while (u > px) {
+            x++;
+            if (x > bound) {
+                x = 0;
+                px = qn;
+                u = rand.nextDouble();
+            } else {
+                u -= px;
+                px = ((n - x + 1) * p * px) / (x * q);
+            }
+        }
+        return x;
+    }
+
+    /**
+     * BTPE for {@code p <= 0.5} and {@code n * p > 30}.
+     */
+    private static int binomialBtpe(Rand rand, int n, double p) {
+        double r = p;
+        double q = 1 - r;
+        double fm = n * r + r;
+        int m = (int) Math.floor(fm);
+        double nrq = n * r * q;
+        double p1 = Math.floor(2.195 * Math.sqrt(nrq) - 4.6 * q) + 0.5;
+        double xm = m + 0.5;
+        double xl = xm - p1;
+        double xr = xm + p1;
+        double c = 0.134 + 20.5 / (15.3 + m);
+        double a = (fm - xl) / (fm - xl * r);
+        double laml = a * (1 + a / 2);
+        a = (xr - fm) / (xr * q);
+        double lamr = a * (1 + a / 2);
+        double p2 = p1 * (1 + 2 * c);
+        double p3 = p2 + c / laml;
+        double p4 = p3 + c / lamr;
+
+        while (true) {
+            double u = rand.nextDouble() * p4;
+            double v = rand.nextDouble();
+            int y;
+            if (u <= p1) {
+                // Triangular centre, always accepted.
+                return (int) Math.floor(xm - p1 * v + u);
+            } else if (u <= p2) {
+                double x = xl + (u - p1) / c;
+                v = v * c + 1 - Math.abs(m - x + 0.5) / p1;
+                if (v > 1) continue;
+                y = (int) Math.floor(x);
+            } else if (u <= p3) {
+                if (v == 0) continue;
+                double x = Math.floor(xl + Math.log(v) / laml);
+                if (x < 0) continue;
+                y = (int) x;
+                v = v * (u - p2) * laml;
+            } else {
+                if (v == 0) continue;
+                double x = Math.floor(xr - Math.log(v) / lamr);
+                if (x > n) continue;
+                y = (int) x;
+                v = v * (u - p3) * lamr;
+            }
+
+            int k = Math.abs(y - m);
+            if (k <= 20 || k >= nrq / 2 - 1) {
+                // Evaluate f(y) / f(m) by recursion.
+                double s = r / q;
+                double aa = s * (n + 1);
+                double f = 1;
+                if (m < y) {
+                    for (int i = m + 1; i <= y; i++) f *= (aa / i - s);
+                } else if (m > y) {
+                    for (int i = y + 1; i <= m; i++) f /= (aa / i - s);
+                }
+                if (v <= f) return y;
+                continue;
+            }
+
+            // Squeeze on log f(y) / f(m), then the final Stirling-based comparison.
+            double rho = (k / nrq) * ((k * (k / 3.0 + 0.625) + 0.16666666666666666) / nrq + 0.5);
+            double t = -((double) k * k) / (2 * nrq);
+            double logV = Math.log(v);
+            if (logV < t - rho) return y;
+            if (logV > t + rho) continue;
+
+            double x1 = y + 1;
+            double f1 = m + 1;
+            double z = n + 1 - m;
+            double w = n - y + 1;
+            double bound = xm * Math.log(f1 / x1)
+                    + (n - m + 0.5) * Math.log(z / w)
+                    + (y - m) * Math.log(w * r / (x1 * q))
+                    + stirlingCorrection(f1) + stirlingCorrection(z) + stirlingCorrection(x1) + stirlingCorrection(w);
+            if (logV <= bound) return y;
+        }
+    }
+
+    private static double stirlingCorrection(double x) {
+        double x2 = x * x;
+        return (13680. - (462. - (132. - (99. - 140. / x2) / x2) / x2) / x2) / x / 166320.;
+    }
+}
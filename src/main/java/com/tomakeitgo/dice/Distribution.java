@@ -0,0 +1,452 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+
+import java.util.Arrays;
+
+/**
+ * Exact probability mass function of a dice expression over a contiguous range of integers.
+ * <p>
+ * {@code probabilities[i]} is the probability of rolling {@code offset + i}. Dice groups are built by
+ * raising the single die polynomial to the number of dice with exponentiation by squaring, so
+ * {@code 1000d6} takes about ten convolutions instead of a thousand.
+ */
+public class Distribution {
+    /**
+     * Largest support the engine will build, a guard against expressions like {@code 100000d100}.
+     */
+    public static final int MAX_SUPPORT = 1_000_000;
+
+    private final int offset;
+    private final double[] probabilities;
+
+    private Distribution(int offset, double[] probabilities) {
+        this.offset = offset;
+        this.probabilities = probabilities;
+    }
+
+    public static Distribution of(DiceExpression expression) {
+        return of(expression, DiceExpression.NO_ARGUMENTS);
+    }
+
+    public static Distribution of(DiceExpression expression, int[] arguments) {
+        return switch (expression) {
+            case Parser.Constant c -> constant(c.getValue());
+            case Parser.Placeholder p -> constant(p.getOperand().resolve(arguments));
+            case Parser.Dice d -> dice(d.getCount().resolve(arguments), d.getSides().resolve(arguments));
+            case Parser.ModifiedDice d -> pool(d.getCount().resolve(arguments), d.getSides().resolve(arguments), d.getModifiers());
+            case Parser.BinaryOperator b -> combine(b, arguments);
+            case Parser.Sum s -> sum(s, arguments);
+            case Parser.SuccessPool p -> successes(p.getCount().resolve(arguments), p.chance(arguments));
+            case Parser.Arithmetic a -> arithmetic(a, arguments);
+            case Parser.Negate n -> of(n.getOperand(), arguments).negate();
+            default -> throw new IllegalArgumentException("Unsupported dice expression " + expression);
+        };
+    }
+
+    public static Distribution constant(int value) {
+        return new Distribution(value, new double[]{1.0});
+    }
+
+    public static Distribution die(int sides) {
+        if (sides < 1) throw new IllegalArgumentException("A die needs at least one side");
+        var probabilities = new double[sides];
+        Arrays.fill(probabilities, 1.0 / sides);
+        return new Distribution(1, probabilities);
+    }
+
+    /**
+     * Distribution of the sum of {@code count} dice with {@code sides} sides each.
+     */
+    public static Distribution dice(int count, int sides) {
+        if (count <= 0) return constant(0);
+        if ((long) count * (sides - 1) + 1 > MAX_SUPPORT) {
+            throw new IllegalArgumentException(count + "D" + sides + " is too large for an exact distribution");
+        }
+        return die(sides).power(count);
+    }
+
+    /**
+     * Distribution of a single die with {@code sides} sides under the reroll and explode modifiers.
+     */
+    public static Distribution die(int sides, DiceModifiers modifiers) {
+        modifiers.check(sides);
+        int low = modifiers.reroll();
+        double face = 1.0 / (sides - low);
+        if (!modifiers.explode()) {
+            var probabilities = new double[sides - low];
+            Arrays.fill(probabilities, face);
+            return new Distribution(low + 1, probabilities);
+        }
+
+        // After k explosions the die shows k * sides plus a final face, which only explodes again
+        // while the cap allows.
+        long width = (long) sides * (DiceModifiers.MAX_EXPLOSIONS + 1) - low;
+        if (width > MAX_SUPPORT) {
+            throw new IllegalArgumentException("D" + sides + modifiers + " is too large for an exact distribution");
+        }
+        var probabilities = new double[(int) width];
+        double reach = face;
+        for (int explosions = 0; explosions <= DiceModifiers.MAX_EXPLOSIONS; explosions++) {
+            int last = explosions == DiceModifiers.MAX_EXPLOSIONS ? sides : sides - 1;
+            for (int value = low + 1; value <= last; value++) {
+                probabilities[explosions * sides + value - low - 1] = reach;
+            }
+            reach *= face;
+        }
+        return new Distribution(low + 1, probabilities);
+    }
+
+    /**
+     * Distribution of {@code count} dice with {@code sides} sides after applying {@code modifiers}.
+     */
+    public static Distribution pool(int count, int sides, DiceModifiers modifiers) {
+        var die = die(sides, modifiers);
+        int kept = modifiers.kept(count);
+        if (kept == count) {
+            if ((long) count * (die.probabilities.length - 1) + 1 > MAX_SUPPORT) {
+                throw new IllegalArgumentException(count + "D" + sides + modifiers + " is too large for an exact distribution");
+            }
+            return die.power(count);
+        }
+        if (kept == 0) return constant(0);
+        return die.keep(count, kept, modifiers.keepsHighest());
+    }
+
+    /**
+     * Distribution of the sum of the {@code kept} highest (or lowest) of {@code count} independent
+     * draws from this distribution.
+     * <p>
+     * Values are visited from the best down. With {@code m} draws not yet placed, all at or below the
+     * current value, the number at exactly this value is binomial, so the state is only the number of
+     * draws left, the number kept and the kept sum. Once enough are kept the rest no longer matter.
+     */
+    Distribution keep(int count, int kept, boolean highest) {
+        int values = probabilities.length;
+        int sums = kept * (values - 1) + 1;
+        if ((double) values * count * count * kept * sums > 4e9) {
+            throw new IllegalArgumentException("Keeping " + kept + " of " + count + " dice is too large for an exact distribution");
+        }
+
+        double[] logFactorial = new double[count + 1];
+        for (int i = 1; i <= count; i++) logFactorial[i] = logFactorial[i - 1] + Math.log(i);
+
+        // states[m][j][s]: m draws left, j kept so far, kept indexes summing to s.
+        double[][][] states = new double[count + 1][kept][];
+        states[count][0] = new double[sums];
+        states[count][0][0] = 1;
+        double[] done = new double[sums];
+        double remainingMass = 1;
+        double[] binomial = new double[count + 1];
+        int lastStep = 0;
+        for (int step = 0; step < values; step++) {
+            if (probabilities[highest ? values - 1 - step : step] > 0) lastStep = step;
+        }
+
+        for (int step = 0; step < values; step++) {
+            int index = highest ? values - 1 - step : step;
+            double p = probabilities[index];
+            if (p == 0) continue;
+            double share = step == lastStep ? 1 : Math.min(1, p / remainingMass);
+            remainingMass -= p;
+
+            double[][][] next = new double[count + 1][kept][];
+            for (int m = 0; m <= count; m++) {
+                binomialPmf(binomial, m, share, logFactorial);
+                for (int j = 0; j < kept; j++) {
+                    double[] sumsOf = states[m][j];
+                    if (sumsOf == null) continue;
+                    for (int s = 0; s < sums; s++) {
+                        double mass = sumsOf[s];
+                        if (mass == 0) continue;
+                        for (int c = 0; c <= m; c++) {
+                            double weight = mass * binomial[c];
+                            if (weight == 0) continue;
+                            int taken = Math.min(c, kept - j);
+                            int sum = s + taken * index;
+                            if (j + taken == kept) {
+                                done[sum] += weight;
+                            } else {
+                                if (next[m - c][j + taken] == null) next[m - c][j + taken] = new double[sums];
+                                next[m - c][j + taken][sum] += weight;
+                            }
+                        }
+                    }
+                }
+            }
+            states = next;
+        }
+        return new Distribution(kept * offset, done);
+    }
+
+    private static void binomialPmf(double[] out, int n, double p, double[] logFactorial) {
+        Arrays.fill(out, 0, n + 1, 0);
+        if (p <= 0) {
+            out[0] = 1;
+            return;
+        }
+        if (p >= 1) {
+            out[n] = 1;
+            return;
+        }
+        double logP = Math.log(p);
+        double logQ = Math.log1p(-p);
+        for (int c = 0; c <= n; c++) {
+            out[c] = Math.exp(logFactorial[n] - logFactorial[c] - logFactorial[n - c] + c * logP + (n - c) * logQ);
+        }
+    }
+
+    /**
+     * Binomial distribution of the number of successes among {@code count} dice that each succeed with
+     * probability {@code chance}.
+     */
+    public static Distribution successes(int count, double chance) {
+        if (count <= 0) return constant(0);
+        if (count + 1L > MAX_SUPPORT) {
+            throw new IllegalArgumentException("A pool of " + count + " dice is too large for an exact distribution");
+        }
+        var probabilities = new double[count + 1];
+        if (chance <= 0) {
+            probabilities[0] = 1;
+        } else if (chance >= 1) {
+            probabilities[count] = 1;
+        } else {
+            // Walk the log probabilities up from no successes so large pools do not underflow.
+            double logOdds = Math.log(chance) - Math.log1p(-chance);
+            double log = count * Math.log1p(-chance);
+            for (int k = 0; k <= count; k++) {
+                probabilities[k] = Math.exp(log);
+                log += Math.log((double) (count - k) / (k + 1)) + logOdds;
+            }
+        }
+        return new Distribution(0, probabilities);
+    }
+
+    private static Distribution combine(Parser.BinaryOperator operator, int[] arguments) {
+        // Mirrors BinaryOperator.eval, which only folds when it has at least two items.
+        var items = operator.getItems();
+        if (items.size() < 2) return constant(0);
+
+        boolean subtract = operator.getSymbol().equals("-");
+        var result = of(items.getFirst(), arguments);
+        for (int i = 1; i < items.size(); i++) {
+            var next = of(items.get(i), arguments);
+            result = subtract ? result.subtract(next) : result.add(next);
+        }
+        return result;
+    }
+
+    private static Distribution sum(Parser.Sum sum, int[] arguments) {
+        var result = constant(sum.getConstant());
+        for (DiceExpression term : sum.getAdded()) {
+            result = result.add(of(term, arguments));
+        }
+        for (DiceExpression term : sum.getSubtracted()) {
+            result = result.subtract(of(term, arguments));
+        }
+        return result;
+    }
+
+    private static Distribution arithmetic(Parser.Arithmetic arithmetic, int[] arguments) {
+        var left = of(arithmetic.getLeft(), arguments);
+        var right = of(arithmetic.getRight(), arguments);
+        return switch (arithmetic.getSymbol()) {
+            case '+' -> left.add(right);
+            case '-' -> left.subtract(right);
+            case '*' -> left.combine(right, '*');
+            default -> {
+                if (right.probability(0) > 0) {
+                    throw new IllegalArgumentException("The expression may divide by zero");
+                }
+                yield left.combine(right, '/');
+            }
+        };
+    }
+
+    /**
+     * Distribution of {@code this symbol other} for {@code *} and {@code /}, pairing every value of one
+     * side with every value of the other.
+     */
+    private Distribution combine(Distribution other, char symbol) {
+        if ((long) probabilities.length * other.probabilities.length > (long) MAX_SUPPORT * 100) {
+            throw new IllegalArgumentException("The expression is too large for an exact distribution");
+        }
+        long low = Long.MAX_VALUE;
+        long high = Long.MIN_VALUE;
+        for (int a = min(); a <= max(); a++) {
+            for (int b = other.min(); b <= other.max(); b++) {
+                if (b == 0 && symbol == '/') continue;
+                long value = Parser.Arithmetic.apply(symbol, a, b);
+                low = Math.min(low, value);
+                high = Math.max(high, value);
+            }
+        }
+        if (high - low + 1 > MAX_SUPPORT || low < Integer.MIN_VALUE || high > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The expression is too large for an exact distribution");
+        }
+        var result = new double[(int) (high - low + 1)];
+        for (int i = 0; i < probabilities.length; i++) {
+            if (probabilities[i] == 0) continue;
+            int a = offset + i;
+            for (int j = 0; j < other.probabilities.length; j++) {
+                int b = other.offset + j;
+                if (b == 0 && symbol == '/') continue;
+                result[(int) (Parser.Arithmetic.apply(symbol, a, b) - low)] += probabilities[i] * other.probabilities[j];
+            }
+        }
+        return new Distribution((int) low, result);
+    }
+
+    /**
+     * Distribution of the sum of {@code n} independent draws from this distribution.
+     */
+    public Distribution power(int n) {
+        if (n <= 0) return constant(0);
+        Distribution result = null;
+        Distribution base = this;
+        while (true) {
+            if ((n & 1) != 0) {
+                result = result == null ? base : result.add(base);
+            }
+            n >>>= 1;
+            if (n == 0) return result;
+            base = base.add(base);
+        }
+    }
+
+    /**
+     * Distribution of {@code A + B} for independent A and B.
+     */
+    public Distribution add(Distribution other) {
+        return new Distribution(offset + other.offset, convolve(probabilities, other.probabilities));
+    }
+
+    /**
+     * Distribution of {@code A - B} for independent A and B.
+     */
+    public Distribution subtract(Distribution other) {
+        return add(other.negate());
+    }
+
+    public Distribution negate() {
+        var reversed = new double[probabilities.length];
+        for (int i = 0; i < probabilities.length; i++) {
+            reversed[probabilities.length - 1 - i] = probabilities[i];
+        }
+        return new Distribution(-max(), reversed);
+    }
+
+    private static double[] convolve(double[] a, double[] b) {
+        if ((long) a.length + b.length - 1 > MAX_SUPPORT) {
+            throw new IllegalArgumentException("Distribution is too large to compute exactly");
+        }
+        var result = new double[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            double p = a[i];
+            if (p == 0) continue;
+            for (int j = 0; j < b.length; j++) {
+                result[i + j] += p * b[j];
+            }
+        }
+        return result;
+    }
+
+    double[] probabilities() {
+        return probabilities.clone();
+    }
+
+    public int min() {
+        return offset;
+    }
+
+    public int max() {
+        return offset + probabilities.length - 1;
+    }
+
+    public double probability(int value) {
+        int index = value - offset;
+        if (index < 0 || index >= probabilities.length) return 0;
+        return probabilities[index];
+    }
+
+    public double mean() {
+        double mean = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            mean += (offset + (double) i) * probabilities[i];
+        }
+        return mean;
+    }
+
+    public double variance() {
+        double mean = mean();
+        double variance = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            double delta = offset + i - mean;
+            variance += delta * delta * probabilities[i];
+        }
+        return variance;
+    }
+
+    public double stddev() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * Smallest value whose cumulative probability is at least {@code fraction}, which must be in [0, 1].
+     */
+    public int percentile(double fraction) {
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("percentile must be between 0 and 1");
+        double cumulative = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            cumulative += probabilities[i];
+            // Tolerate the rounding error accumulated while summing.
+            if (cumulative >= fraction - 1e-12) return offset + i;
+        }
+        return max();
+    }
+
+    /**
+     * Probability that a draw from this distribution is strictly greater than an independent draw from {@code other}.
+     */
+    public double probabilityGreaterThan(Distribution other) {
+        return subtract(other).probabilityAbove(0);
+    }
+
+    /**
+     * Probability of a value strictly greater than {@code value}.
+     */
+    public double probabilityAbove(int value) {
+        double total = 0;
+        for (int i = Math.max(0, value + 1 - offset); i < probabilities.length; i++) {
+            total += probabilities[i];
+        }
+        return total;
+    }
+
+    /**
+     * Probability of a value of at least {@code value}, such as rolling at least k successes.
+     */
+    public double probabilityAtLeast(int value) {
+        return value == Integer.MIN_VALUE ? 1 : probabilityAbove(value - 1);
+    }
+
+    /**
+     * Probability of a value strictly less than {@code value}.
+     */
+    public double probabilityBelow(int value) {
+        double total = 0;
+        for (int i = 0; i < Math.min(probabilities.length, value - offset); i++) {
+            total += probabilities[i];
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        return "Distribution{" +
+                "min=" + min() +
+                ", max=" + max() +
+                ", mean=" + mean() +
+                '}';
+    }
+}
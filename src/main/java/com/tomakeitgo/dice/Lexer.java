@@ -46,6 +46,9 @@ public class Lexer {
                
 
                 tokens.add(new Token(Token.Type.DIGITS, buffer.toString()));
+            } else if (Character.isLetter(c)) {
+                tokens.add(new Token(Token.Type.NAME, String.valueOf(c)));
+                i++;
             } else {
                 // do nothing yet
                 //Mystery Tokens! We should probably yell...
@@ -70,7 +73,8 @@ public class Lexer {
             D,
             DIGITS,
             PLUS,
-            MINUS
+            MINUS,
+            NAME
         }
 
         public String getValue() {
@@ -0,0 +1,186 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.Arithmetic;
+import com.tomakeitgo.dice.Parser.BinaryOperator;
+import com.tomakeitgo.dice.Parser.Constant;
+import com.tomakeitgo.dice.Parser.Dice;
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import com.tomakeitgo.dice.Parser.ModifiedDice;
+import com.tomakeitgo.dice.Parser.Negate;
+import com.tomakeitgo.dice.Parser.Operand;
+import com.tomakeitgo.dice.Parser.Placeholder;
+import com.tomakeitgo.dice.Parser.SuccessPool;
+import com.tomakeitgo.dice.Parser.Sum;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rewrites a dice expression into a {@link Sum} that rolls the same values with less work.
+ * <ul>
+ *     <li>nested {@code +} and {@code -} are flattened into added and subtracted terms</li>
+ *     <li>constants are folded into one</li>
+ *     <li>fixed dice with the same number of sides and sign are merged, so {@code + 3d6 2d6 5 1} rolls
+ *     {@code 5d6} once and adds 6</li>
+ *     <li>terms are ordered, dice by sides from largest to smallest, so equivalent spellings write the
+ *     same {@link #canonical canonical text}</li>
+ * </ul>
+ * Modified dice, success pools and dice with placeholders are kept as they are, since {@code 4d6kh3} twice is not
+ * {@code 8d6kh6}. An operator with fewer than two items is worth 0, as it is when evaluated. Products and
+ * quotients are terms of their own, normalised inside and folded when both sides are constants.
+ * <p>
+ * Infix expressions normalise to a sum written in infix, prefix ones to a sum written in prefix.
+ */
+public class Normalizer {
+
+    public static Sum normalize(DiceExpression expression) {
+        return normalize(expression, !(expression instanceof BinaryOperator));
+    }
+
+    private static Sum normalize(DiceExpression expression, boolean infix) {
+        var terms = new Terms();
+        terms.add(expression, true);
+        return terms.toSum(infix);
+    }
+
+    /**
+     * The expression written with lower case dice and no rolls, for example {@code + 5d6 2d4 6} or
+     * {@code 5d6 + 2d4 + 6}. Equivalent spellings of an expression in the same grammar write the same text.
+     */
+    public static String canonical(Sum sum) {
+        var out = new StringBuilder();
+        sum.write(out, Normalizer::text);
+        return out.toString();
+    }
+
+    private static void text(StringBuilder out, DiceExpression term) {
+        switch (term) {
+            case Constant c -> out.append(c.getText());
+            case Placeholder p -> out.append(p.getOperand().text());
+            case Dice d -> out.append(text(d.getCount())).append('d').append(text(d.getSides()));
+            case ModifiedDice d -> out.append(text(d.getCount())).append('d').append(text(d.getSides())).append(d.getModifiers());
+            case SuccessPool p -> out.append(text(p.getCount())).append('d').append(text(p.getSides()))
+                    .append(p.getComparison().getSymbol()).append(text(p.getTarget()));
+            case Arithmetic a -> a.write(out, Normalizer::text);
+            case Negate n -> n.write(out, Normalizer::text);
+            case Sum s -> s.write(out, Normalizer::text);
+            default -> throw new IllegalArgumentException("Unsupported dice expression " + term);
+        }
+    }
+
+    private static String text(Operand operand) {
+        return operand.isPlaceholder() ? operand.text() : Integer.toString(operand.value());
+    }
+
+    private static class Terms {
+        private long constant;
+        // Dice counts by sides, largest sides first.
+        private final Map<Integer, Long> addedDice = new TreeMap<>(Comparator.reverseOrder());
+        private final Map<Integer, Long> subtractedDice = new TreeMap<>(Comparator.reverseOrder());
+        private final List<DiceExpression> addedOther = new ArrayList<>();
+        private final List<DiceExpression> subtractedOther = new ArrayList<>();
+
+        void add(DiceExpression expression, boolean positive) {
+            switch (expression) {
+                case Constant c -> constant += positive ? c.getValue() : -(long) c.getValue();
+                case Dice d when Sum.isFixed(d) -> {
+                    if (d.getCount().value() > 0) {
+                        (positive ? addedDice : subtractedDice).merge(d.getSides().value(), (long) d.getCount().value(), Long::sum);
+                    }
+                }
+                case ModifiedDice d when Sum.isFixed(d) && d.getCount().value() <= 0 -> {
+                    // Rolls nothing.
+                }
+                case SuccessPool p when Sum.isFixed(p) && p.getCount().value() <= 0 -> {
+                    // Rolls nothing.
+                }
+                case BinaryOperator b -> {
+                    var items = b.getItems();
+                    if (items.size() < 2) return;
+                    boolean subtract = b.getSymbol().equals("-");
+                    add(items.getFirst(), positive);
+                    for (int i = 1; i < items.size(); i++) {
+                        add(items.get(i), subtract != positive);
+                    }
+                }
+                case Arithmetic a when a.getSymbol() == '+' || a.getSymbol() == '-' -> {
+                    add(a.getLeft(), positive);
+                    add(a.getRight(), a.getSymbol() == '+' == positive);
+                }
+                case Arithmetic a -> {
+                    var product = product(a);
+                    if (product instanceof Constant c) {
+                        add(c, positive);
+                    } else {
+                        (positive ? addedOther : subtractedOther).add(product);
+                    }
+                }
+                case Negate n -> add(n.getOperand(), !positive);
+                case Sum s -> {
+                    constant += positive ? s.getConstant() : -(long) s.getConstant();
+                    for (DiceExpression term : s.getAdded()) add(term, positive);
+                    for (DiceExpression term : s.getSubtracted()) add(term, !positive);
+                }
+                default -> (positive ? addedOther : subtractedOther).add(expression);
+            }
+        }
+
+        /**
+         * A product or quotient with both sides normalised, or a constant when both sides are.
+         */
+        private static DiceExpression product(Arithmetic arithmetic) {
+            var left = term(normalize(arithmetic.getLeft(), true));
+            var right = term(normalize(arithmetic.getRight(), true));
+            if (left instanceof Constant l && right instanceof Constant r) {
+                if (r.getValue() == 0 && arithmetic.getSymbol() == '/') {
+                    throw new IllegalArgumentException("Cannot divide by zero");
+                }
+                long value = Arithmetic.apply(arithmetic.getSymbol(), l.getValue(), r.getValue());
+                if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("The constants in the expression multiply to more than an int");
+                }
+                return new Constant(Long.toString(value), (int) value);
+            }
+            return new Arithmetic(arithmetic.getSymbol(), left, right);
+        }
+
+        private static DiceExpression term(Sum sum) {
+            var single = sum.single();
+            return single != null ? single : sum;
+        }
+
+        Sum toSum(boolean infix) {
+            if (constant < Integer.MIN_VALUE || constant > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The constants in the expression add up to more than an int");
+            }
+            return new Sum((int) constant, terms(addedDice, addedOther), terms(subtractedDice, subtractedOther), infix);
+        }
+
+        private static List<DiceExpression> terms(Map<Integer, Long> dice, List<DiceExpression> other) {
+            var terms = new ArrayList<DiceExpression>();
+            dice.forEach((sides, count) -> {
+                // Only a pool beyond the int range needs more than one group.
+                for (long left = count; left > 0; left -= Integer.MAX_VALUE) {
+                    int group = (int) Math.min(left, Integer.MAX_VALUE);
+                    terms.add(new Dice(new Operand(Integer.toString(group), group, -1), new Operand(Integer.toString(sides), sides, -1)));
+                }
+            });
+            var modified = new ArrayList<DiceExpression>();
+            var placeholders = new ArrayList<DiceExpression>();
+            for (DiceExpression term : other) {
+                (Sum.isFixed(term) ? modified : placeholders).add(term);
+            }
+            modified.sort(Comparator.comparing(term -> {
+                var text = new StringBuilder();
+                text(text, term);
+                return text.toString();
+            }));
+            terms.addAll(modified);
+            terms.addAll(placeholders);
+            return terms;
+        }
+    }
+}
@@ -1,171 +1,1135 @@
 package com.tomakeitgo.dice;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.LongBinaryOperator;
+import java.util.function.Supplier;
 
 /**
  * Grammar
  * <ul>
+ *     <li>sum := product ((PLUS | MINUS) product)*</li>
+ *     <li>product := unary ((TIMES | DIVIDE) unary)*</li>
+ *     <li>unary := MINUS unary | PLUS unary | OPEN sum CLOSE | value</li>
+ *     <li>value := successes | dice | constant, where a dice count may be left out ({@code d6})</li>
+ * </ul>
+ * Text that starts with an operator and a space uses the prefix grammar instead, see {@link Compiler}
+ * <ul>
  *     <li>expr :=  value | operator value+ expr</li>
- *     <li>value := dice | constant</li>
- *     <li>dice := DIGITS D DIGITS</li>
- *     <li>constant := DIGITS</li>
+ *     <li>value := successes | dice | constant</li>
  *     <li>operator := MINUS | PLUS</li>
  * </ul>
+ * Shared by both
+ * <ul>
+ *     <li>dice := operand D operand modifier*</li>
+ *     <li>modifier := r DIGITS | ! | (k | kh | kl | dh | dl) DIGITS, written directly after the sides, see {@link DiceModifiers}</li>
+ *     <li>successes := operand D operand (&gt;= | &gt; | &lt;= | &lt; | =) operand, the number of dice meeting the target</li>
+ *     <li>constant := operand</li>
+ *     <li>operand := DIGITS | NAME</li>
+ * </ul>
  * <p>
  * Lexicon
  * <ul>
  * <li>D := [dD]</li>
  * <li>DIGITS := \d+</li>
+ * <li>NAME := a single letter other than D, a placeholder bound when the expression is evaluated</li>
  * <li>PLUS := [+]</li>
  * <li>MINUS := [-]</li>
+ * <li>TIMES := [*], DIVIDE := [/], OPEN := [(], CLOSE := [)], infix only</li>
  * </ul>
  */
 public class Parser {
 
     public DiceExpression parse(List<Lexer.Token> tokens) {
-        if (tokens.isEmpty()) {
-            return (r) -> new DiceExpression.Result("", true, 0, 0, 0);
+        return parse(tokens, new ArrayList<>());
+    }
+
+    /**
+     * Parses the tokens, collecting placeholder names into {@code placeholders} in the order they
+     * first appear. The index of a name in that list is the argument slot it is bound from.
+     * <p>
+     * Kept for callers that already hold tokens; the tokens are spelled back out and handed to the
+     * {@link Compiler}, which reads them in the prefix grammar alone, exactly as this parser did before
+     * infix arithmetic. So a lexed {@code -1} followed by {@code d6} is still a pool of -1 dice, where
+     * the text {@code -1d6} given to the compiler is one die negated. The lexer has no tokens for dice
+     * modifiers or infix operators, so those are only available through the compiler.
+     */
+    public DiceExpression parse(List<Lexer.Token> tokens, List<String> placeholders) {
+        var source = new StringBuilder();
+        for (Lexer.Token token : tokens) {
+            source.append(token.getValue()).append(' ');
         }
-        return parse(new LinkedList<>(tokens));
+        return new Compiler().compilePrefix(source, placeholders);
     }
 
-    private DiceExpression parse(LinkedList<Lexer.Token> tokens) {
-        if (tokens.getFirst().getType().equals(Lexer.Token.Type.PLUS)) {
-            tokens.pop();
-            List<DiceExpression> expression = new ArrayList<>();
-            DiceExpression value;
-            while ((value = parseValue(tokens)) != null) {
-                expression.add(value);
+    /**
+     * A number inside a dice expression, either fixed at parse time or read from an argument slot.
+     * Equal when the text, value and slot are, as a record would be.
+     */
+    public static final class Operand {
+        private final String text;
+        private final int value;
+        private final int slot;
+
+        public Operand(String text, int value, int slot) {
+            this.text = Objects.requireNonNull(text);
+            this.value = value;
+            this.slot = slot;
+        }
+
+        // The number is written as Integer.toString(value), so the text is only built if it is asked for.
+        private Operand(int value) {
+            this.text = null;
+            this.value = value;
+            this.slot = -1;
+        }
+
+        /**
+         * The fixed number {@code value}, written the way {@link Integer#toString(int)} writes it.
+         */
+        public static Operand of(int value) {
+            return new Operand(value);
+        }
+
+        public String text() {
+            return text != null ? text : Integer.toString(value);
+        }
+
+        public int value() {
+            return value;
+        }
+
+        public int slot() {
+            return slot;
+        }
+
+        // Whether the text is exactly Integer.toString(value), so a description can append the value.
+        boolean isWrittenAsValue() {
+            return text == null;
+        }
+
+        public boolean isPlaceholder() {
+            return slot >= 0;
+        }
+
+        public int resolve(int[] arguments) {
+            if (slot < 0) return value;
+            if (slot >= arguments.length) {
+                throw new IllegalArgumentException("No value bound for placeholder " + text);
             }
-            if (!tokens.isEmpty()) {
-                expression.add(parse(tokens));
+            return arguments[slot];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Operand operand
+                    && value == operand.value && slot == operand.slot && text().equals(operand.text());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text(), value, slot);
+        }
+
+        @Override
+        public String toString() {
+            return "Operand[text=" + text() + ", value=" + value + ", slot=" + slot + "]";
+        }
+    }
+
+    public static class Constant implements DiceExpression {
+        // Null when the constant is written as Integer.toString(value).
+        private final String text;
+        private final int value;
+
+        public Constant(String text, int value) {
+            this.text = text;
+            this.value = value;
+        }
+
+        /**
+         * The constant written in the operand's text, which is only built if it is asked for.
+         */
+        public Constant(Operand operand) {
+            this.text = operand.isWrittenAsValue() ? null : operand.text();
+            this.value = operand.value();
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public String getText() {
+            return text != null ? text : Integer.toString(value);
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            return value;
+        }
+
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            Arrays.fill(out, 0, n, value);
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            if (text != null) {
+                out.append(text);
+            } else {
+                out.append(value);
             }
-            return new BinaryOperator("+", (a, b) -> a + b, expression);
-        } else if (tokens.getFirst().getType().equals(Lexer.Token.Type.MINUS)) {
-            tokens.pop();
-            List<DiceExpression> expression = new ArrayList<>();
-            DiceExpression value;
-            while ((value = parseValue(tokens)) != null) {
-                expression.add(value);
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            return value;
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return value;
+        }
+    }
+
+    public static class Placeholder implements DiceExpression {
+        private final Operand operand;
+
+        public Placeholder(Operand operand) {
+            this.operand = operand;
+        }
+
+        public Operand getOperand() {
+            return operand;
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            int value = operand.resolve(arguments);
+            if (trace != null) trace.add(value);
+            return value;
+        }
+
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            Arrays.fill(out, 0, n, operand.resolve(arguments));
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            out.append(trace.next());
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            return operand.resolve(arguments);
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return operand.resolve(arguments);
+        }
+    }
+
+    public static class Dice implements DiceExpression {
+        private static final int BLOCK_SIZE = 1024;
+
+        private final Operand count;
+        private final Operand sides;
+        // Built on first use; a race only means two threads build the same immutable table.
+        private volatile AliasTable alias;
+        private volatile boolean aliasChecked;
+
+        public Dice(Operand count, Operand sides) {
+            this.count = count;
+            this.sides = sides;
+        }
+
+        public Operand getCount() {
+            return count;
+        }
+
+        public Operand getSides() {
+            return sides;
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            var numberOfDice = count.resolve(arguments);
+            var numberOfSides = sides.resolve(arguments);
+
+            long total = roll(rand, numberOfDice, numberOfSides);
+            if (trace != null) {
+                trace.add(numberOfDice);
+                trace.add(numberOfSides);
+                trace.add(total);
             }
-            if (!tokens.isEmpty()) {
-                expression.add(parse(tokens));
+            return total;
+        }
+
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            var numberOfDice = count.resolve(arguments);
+            var numberOfSides = sides.resolve(arguments);
+
+            if (numberOfDice == 1) {
+                rand.fill(out, 0, n, numberOfSides);
+                return;
+            }
+            if (numberOfDice > DiceSampler.LOOP_LIMIT || (long) numberOfDice * numberOfSides > Integer.MAX_VALUE) {
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.toIntExact(roll(rand, numberOfDice, numberOfSides));
+                }
+                return;
+            }
+            Arrays.fill(out, 0, n, 0);
+            if (numberOfDice < 1) return;
+
+            // Roll one die across a block of results at a time so the RNG and the sum run as flat loops.
+            int[] block = new int[Math.min(n, BLOCK_SIZE)];
+            for (int start = 0; start < n; start += block.length) {
+                int length = Math.min(block.length, n - start);
+                for (int die = 0; die < numberOfDice; die++) {
+                    rand.fill(block, 0, length, numberOfSides);
+                    for (int i = 0; i < length; i++) {
+                        out[start + i] += block[i];
+                    }
+                }
+            }
+        }
+
+        private long roll(Rand rand, int numberOfDice, int numberOfSides) {
+            if (numberOfDice > DiceSampler.LOOP_LIMIT && !count.isPlaceholder() && !sides.isPlaceholder()) {
+                var table = aliasTable();
+                if (table != null) {
+                    return numberOfDice + table.sample(rand);
+                }
             }
-            return new BinaryOperator("-", (a, b) -> a - b, expression);
-        } else {
-            return parseValue(tokens);
+            return DiceSampler.sum(rand, numberOfDice, numberOfSides);
         }
 
+        private AliasTable aliasTable() {
+            if (!aliasChecked) {
+                alias = DiceSampler.aliasTable(count.value(), sides.value());
+                aliasChecked = true;
+            }
+            return alias;
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            out.append(trace.next()).append('D').append(trace.next())
+                    .append('(').append(trace.next()).append(')');
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            return count.resolve(arguments);
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return (long) count.resolve(arguments) * sides.resolve(arguments);
+        }
     }
 
-    private DiceExpression parseValue(LinkedList<Lexer.Token> tokens) {
-        var die = parseDie(tokens);
-        if (die == null) {
-            return parseNumber(tokens);
-        } else {
-            return die;
+    /**
+     * A pool of dice with rerolls, explosions or a keep/drop selection, such as {@code 4d6kh3}.
+     */
+    public static class ModifiedDice implements DiceExpression {
+        private final Operand count;
+        private final Operand sides;
+        private final DiceModifiers modifiers;
+
+        public ModifiedDice(Operand count, Operand sides, DiceModifiers modifiers) {
+            this.count = count;
+            this.sides = sides;
+            this.modifiers = modifiers;
+            if (!sides.isPlaceholder()) modifiers.check(sides.value());
+        }
+
+        public Operand getCount() {
+            return count;
+        }
+
+        public Operand getSides() {
+            return sides;
+        }
+
+        public DiceModifiers getModifiers() {
+            return modifiers;
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            var numberOfDice = count.resolve(arguments);
+            var numberOfSides = sides.resolve(arguments);
+
+            long total = DiceSampler.pool(rand, numberOfDice, numberOfSides, modifiers);
+            if (trace != null) {
+                trace.add(numberOfDice);
+                trace.add(numberOfSides);
+                trace.add(total);
+            }
+            return total;
+        }
+
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            var numberOfDice = count.resolve(arguments);
+            var numberOfSides = sides.resolve(arguments);
+            for (int i = 0; i < n; i++) {
+                out[i] = Math.toIntExact(DiceSampler.pool(rand, numberOfDice, numberOfSides, modifiers));
+            }
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            out.append(trace.next()).append('D').append(trace.next()).append(modifiers)
+                    .append('(').append(trace.next()).append(')');
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            return modifiers.kept(count.resolve(arguments)) * modifiers.dieMin();
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return modifiers.kept(count.resolve(arguments)) * modifiers.dieMax(sides.resolve(arguments));
         }
     }
 
-    private DiceExpression parseNumber(LinkedList<Lexer.Token> tokens) {
-        if (tokens.isEmpty()) return null;
-        if (!tokens.getFirst().getType().equals(Lexer.Token.Type.DIGITS)) return null;
-        var number = tokens.pop();
-        return (r) -> new DiceExpression.Result(
-                number.getValue(),
-                true,
-                Integer.parseInt(number.getValue()),
-                Integer.parseInt(number.getValue()),
-                Integer.parseInt(number.getValue())
-        );
+    /**
+     * A pool that counts the dice meeting a target instead of adding them up, such as {@code 10d10>=7}.
+     * Each die succeeds independently with the same chance, so the count is one binomial draw however
+     * large the pool.
+     */
+    public static class SuccessPool implements DiceExpression {
+        public enum Comparison {
+            AT_LEAST(">="),
+            MORE_THAN(">"),
+            AT_MOST("<="),
+            LESS_THAN("<"),
+            EQUAL_TO("=");
+
+            private final String symbol;
+
+            Comparison(String symbol) {
+                this.symbol = symbol;
+            }
+
+            public String getSymbol() {
+                return symbol;
+            }
+
+            /**
+             * Number of faces of a die with {@code sides} sides that meet {@code target}.
+             */
+            public int faces(int sides, int target) {
+                long faces = switch (this) {
+                    case AT_LEAST -> (long) sides - Math.max(target, 1) + 1;
+                    case MORE_THAN -> (long) sides - Math.max(target, 0);
+                    case AT_MOST -> Math.min(target, sides);
+                    case LESS_THAN -> Math.min((long) target - 1, sides);
+                    case EQUAL_TO -> target >= 1 && target <= sides ? 1 : 0;
+                };
+                return (int) Math.max(0, Math.min(faces, sides));
+            }
+        }
+
+        private final Operand count;
+        private final Operand sides;
+        private final Comparison comparison;
+        private final Operand target;
+
+        public SuccessPool(Operand count, Operand sides, Comparison comparison, Operand target) {
+            this.count = count;
+            this.sides = sides;
+            this.comparison = comparison;
+            this.target = target;
+        }
+
+        public Operand getCount() {
+            return count;
+        }
+
+        public Operand getSides() {
+            return sides;
+        }
+
+        public Comparison getComparison() {
+            return comparison;
+        }
+
+        public Operand getTarget() {
+            return target;
+        }
+
+        /**
+         * Chance that a single die succeeds.
+         */
+        public double chance(int[] arguments) {
+            int numberOfSides = sides.resolve(arguments);
+            if (numberOfSides < 1) throw new IllegalArgumentException("A die needs at least one side");
+            return (double) comparison.faces(numberOfSides, target.resolve(arguments)) / numberOfSides;
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            var numberOfDice = count.resolve(arguments);
+            var numberOfSides = sides.resolve(arguments);
+            var goal = target.resolve(arguments);
+
+            int successes = DiceSampler.binomial(rand, numberOfDice, chance(arguments));
+            if (trace != null) {
+                trace.add(numberOfDice);
+                trace.add(numberOfSides);
+                trace.add(goal);
+                trace.add(successes);
+            }
+            return successes;
+        }
+
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            int numberOfDice = count.resolve(arguments);
+            double chance = chance(arguments);
+            for (int i = 0; i < n; i++) {
+                out[i] = DiceSampler.binomial(rand, numberOfDice, chance);
+            }
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            out.append(trace.next()).append('D').append(trace.next())
+                    .append(comparison.getSymbol()).append(trace.next())
+                    .append('(').append(trace.next()).append(')');
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            return 0;
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return Math.max(count.resolve(arguments), 0);
+        }
     }
 
-    private DiceExpression parseDie(LinkedList<Lexer.Token> tokens) {
-        if (tokens.size() < 3) return null;
+    /**
+     * An infix operation, {@code +}, {@code -}, {@code *} or {@code /}. Division rounds toward zero.
+     */
+    public static class Arithmetic implements DiceExpression {
+        static final int ADDITIVE = 1;
+        static final int MULTIPLICATIVE = 2;
+        static final int UNARY = 3;
+        static final int ATOM = 4;
 
-        if (!tokens.get(0).getType().equals(Lexer.Token.Type.DIGITS)) {
-            return null;
+        private final char symbol;
+        private final DiceExpression left;
+        private final DiceExpression right;
+
+        public Arithmetic(char symbol, DiceExpression left, DiceExpression right) {
+            if ("+-*/".indexOf(symbol) < 0) throw new IllegalArgumentException("Unknown operator " + symbol);
+            this.symbol = symbol;
+            this.left = left;
+            this.right = right;
         }
-        if (!tokens.get(1).getType().equals(Lexer.Token.Type.D)) {
-            return null;
+
+        public char getSymbol() {
+            return symbol;
+        }
+
+        public DiceExpression getLeft() {
+            return left;
+        }
+
+        public DiceExpression getRight() {
+            return right;
+        }
+
+        public static long apply(char symbol, long left, long right) {
+            return switch (symbol) {
+                case '+' -> Math.addExact(left, right);
+                case '-' -> Math.subtractExact(left, right);
+                case '*' -> Math.multiplyExact(left, right);
+                default -> {
+                    if (right == 0) throw new ArithmeticException("Cannot divide by zero");
+                    yield left / right;
+                }
+            };
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            long l = left.evalValue(rand, arguments, trace);
+            long r = right.evalValue(rand, arguments, trace);
+            return apply(symbol, l, r);
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            write(out, (text, term) -> term.describe(text, trace));
+        }
+
+        void write(StringBuilder out, BiConsumer<StringBuilder, DiceExpression> item) {
+            int precedence = symbol == '+' || symbol == '-' ? ADDITIVE : MULTIPLICATIVE;
+            writeOperand(out, item, left, precedence(left) < precedence);
+            out.append(' ').append(symbol).append(' ');
+            // a - (b - c) and a / (b / c) need their brackets, a + (b + c) does not.
+            boolean rightGroups = symbol == '-' || symbol == '/';
+            int rightPrecedence = precedence(right);
+            writeOperand(out, item, right, rightPrecedence < precedence || rightGroups && rightPrecedence == precedence);
+        }
+
+        private static void writeOperand(StringBuilder out, BiConsumer<StringBuilder, DiceExpression> item, DiceExpression operand, boolean brackets) {
+            if (brackets) out.append('(');
+            item.accept(out, operand);
+            if (brackets) out.append(')');
+        }
+
+        static int precedence(DiceExpression expression) {
+            return switch (expression) {
+                case Arithmetic a -> a.symbol == '+' || a.symbol == '-' ? ADDITIVE : MULTIPLICATIVE;
+                case Negate n -> UNARY;
+                case Sum s -> s.precedence();
+                case BinaryOperator b -> 0;
+                default -> ATOM;
+            };
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            return bounds(arguments)[0];
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return bounds(arguments)[1];
+        }
+
+        private long[] bounds(int[] arguments) {
+            long leftMin = left.min(arguments), leftMax = left.max(arguments);
+            long rightMin = right.min(arguments), rightMax = right.max(arguments);
+            return switch (symbol) {
+                case '+' -> new long[]{leftMin + rightMin, leftMax + rightMax};
+                case '-' -> new long[]{leftMin - rightMax, leftMax - rightMin};
+                case '*' -> span(leftMin * rightMin, leftMin * rightMax, leftMax * rightMin, leftMax * rightMax);
+                default -> {
+                    // The extremes of a quotient are at the ends of the divisor's range or at +-1.
+                    var quotients = new ArrayList<Long>();
+                    for (long divisor : new long[]{rightMin, rightMax, -1, 1}) {
+                        if (divisor == 0 || divisor < rightMin || divisor > rightMax) continue;
+                        quotients.add(leftMin / divisor);
+                        quotients.add(leftMax / divisor);
+                    }
+                    if (quotients.isEmpty()) yield new long[]{0, 0};
+                    yield span(quotients.stream().mapToLong(Long::longValue).toArray());
+                }
+            };
+        }
+
+        private static long[] span(long... values) {
+            long min = values[0];
+            long max = values[0];
+            for (long value : values) {
+                min = Math.min(min, value);
+                max = Math.max(max, value);
+            }
+            return new long[]{min, max};
+        }
+    }
+
+    /**
+     * Unary minus.
+     */
+    public static class Negate implements DiceExpression {
+        private final DiceExpression operand;
+
+        public Negate(DiceExpression operand) {
+            this.operand = operand;
+        }
+
+        public DiceExpression getOperand() {
+            return operand;
+        }
+
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            return Math.negateExact(operand.evalValue(rand, arguments, trace));
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            write(out, (text, term) -> term.describe(text, trace));
+        }
+
+        void write(StringBuilder out, BiConsumer<StringBuilder, DiceExpression> item) {
+            boolean brackets = Arithmetic.precedence(operand) < Arithmetic.UNARY;
+            out.append(brackets ? "-(" : "-");
+            item.accept(out, operand);
+            if (brackets) out.append(')');
         }
-        if (!tokens.get(2).getType().equals(Lexer.Token.Type.DIGITS)) {
+
+        @Override
+        public long min(int[] arguments) {
+            return -operand.max(arguments);
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            return -operand.min(arguments);
+        }
+    }
+
+    /**
+     * A normalised expression: a constant plus terms that are added and terms that are subtracted, as
+     * built by {@link Normalizer}. Bounds of the terms without placeholders are computed once.
+     * <p>
+     * It is written in the prefix grammar with the added terms first, for example
+     * {@code + 5D6(17) 2D4(5) - 6 1D8(3)} for {@code 5d6 + 2d4 + 6 - 1d8}.
+     */
+    public static class Sum implements DiceExpression {
+        private final int constant;
+        private final DiceExpression[] added;
+        private final DiceExpression[] subtracted;
+        private final boolean infix;
+        private final long fixedMin;
+        private final long fixedMax;
+
+        public Sum(int constant, List<DiceExpression> added, List<DiceExpression> subtracted) {
+            this(constant, added, subtracted, false);
+        }
+
+        /**
+         * @param infix whether the sum is written {@code 5D6(17) + 6} rather than {@code + 5D6(17) 6}
+         */
+        public Sum(int constant, List<DiceExpression> added, List<DiceExpression> subtracted, boolean infix) {
+            this.constant = constant;
+            this.infix = infix;
+            this.added = added.toArray(DiceExpression[]::new);
+            this.subtracted = subtracted.toArray(DiceExpression[]::new);
+
+            long min = constant;
+            long max = constant;
+            for (DiceExpression term : this.added) {
+                if (isFixed(term)) {
+                    min += term.min(NO_ARGUMENTS);
+                    max += term.max(NO_ARGUMENTS);
+                }
+            }
+            for (DiceExpression term : this.subtracted) {
+                if (isFixed(term)) {
+                    min -= term.max(NO_ARGUMENTS);
+                    max -= term.min(NO_ARGUMENTS);
+                }
+            }
+            this.fixedMin = min;
+            this.fixedMax = max;
+        }
+
+        static boolean isFixed(DiceExpression term) {
+            return switch (term) {
+                case Constant c -> true;
+                case Dice d -> !d.getCount().isPlaceholder() && !d.getSides().isPlaceholder();
+                case ModifiedDice d -> !d.getCount().isPlaceholder() && !d.getSides().isPlaceholder();
+                case SuccessPool p -> !p.getCount().isPlaceholder() && !p.getSides().isPlaceholder() && !p.getTarget().isPlaceholder();
+                default -> false;
+            };
+        }
+
+        public int getConstant() {
+            return constant;
+        }
+
+        public List<DiceExpression> getAdded() {
+            return List.of(added);
+        }
+
+        public List<DiceExpression> getSubtracted() {
+            return List.of(subtracted);
+        }
+
+        public boolean isInfix() {
+            return infix;
+        }
+
+        /**
+         * The single term this sum stands for, or null when it adds or subtracts anything else.
+         */
+        DiceExpression single() {
+            if (added.length == 1 && subtracted.length == 0 && constant == 0) return added[0];
+            if (added.length == 0 && subtracted.length == 0) return new Constant(Integer.toString(constant), constant);
             return null;
         }
-        var count = tokens.pop();
-        var d = tokens.pop();
-        var sides = tokens.pop();
 
-        return (r) -> {
-            var numberOfDice = Integer.parseInt(count.getValue());
-            var numberOfSides = Integer.parseInt(sides.getValue());
+        @Override
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            long value = constant;
+            for (DiceExpression term : added) {
+                value = Math.addExact(value, term.evalValue(rand, arguments, trace));
+            }
+            for (DiceExpression term : subtracted) {
+                value = Math.subtractExact(value, term.evalValue(rand, arguments, trace));
+            }
+            return value;
+        }
 
-            int total = 0;
-            for (int i = 0; i < numberOfDice; i++) {
-                total += r.random(numberOfSides);
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            Arrays.fill(out, 0, n, constant);
+            if (added.length + subtracted.length == 0) return;
+            int[] term = new int[n];
+            for (DiceExpression expression : added) {
+                expression.evalMany(rand, n, term, arguments);
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.addExact(out[i], term[i]);
+                }
             }
-            return new DiceExpression.Result(
-                    numberOfDice + "D" + numberOfSides + "(" + total + ")",
-                    true,
-                    total,
-                    numberOfDice,
-                    numberOfDice * numberOfSides
-            );
-        };
+            for (DiceExpression expression : subtracted) {
+                expression.evalMany(rand, n, term, arguments);
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.subtractExact(out[i], term[i]);
+                }
+            }
+        }
+
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            write(out, (text, term) -> term.describe(text, trace));
+        }
+
+        /**
+         * Lays the terms out in the prefix grammar, with {@code item} writing each term.
+         */
+        void write(StringBuilder out, BiConsumer<StringBuilder, DiceExpression> item) {
+            if (added.length + subtracted.length == 0) {
+                out.append(constant);
+                return;
+            }
+            if (infix) {
+                writeInfix(out, item);
+                return;
+            }
+            var positive = new ArrayList<DiceExpression>(List.of(added));
+            var negative = new ArrayList<DiceExpression>(List.of(subtracted));
+            if (constant > 0) positive.add(new Constant(Integer.toString(constant), constant));
+            if (constant < 0) negative.add(new Constant(Long.toString(Math.abs((long) constant)), constant));
+
+            if (negative.isEmpty()) {
+                if (positive.size() == 1) {
+                    item.accept(out, positive.getFirst());
+                } else {
+                    out.append('+');
+                    for (DiceExpression term : positive) item.accept(out.append(' '), term);
+                }
+                return;
+            }
+            if (positive.size() > 1) {
+                out.append('+');
+                for (DiceExpression term : positive.subList(0, positive.size() - 1)) item.accept(out.append(' '), term);
+                out.append(' ');
+            }
+            out.append('-');
+            if (positive.isEmpty()) {
+                out.append(" 0");
+            } else {
+                item.accept(out.append(' '), positive.getLast());
+            }
+            for (DiceExpression term : negative) item.accept(out.append(' '), term);
+        }
+
+        private void writeInfix(StringBuilder out, BiConsumer<StringBuilder, DiceExpression> item) {
+            boolean first = true;
+            for (DiceExpression term : added) {
+                if (!first) out.append(" + ");
+                item.accept(out, term);
+                first = false;
+            }
+            for (DiceExpression term : subtracted) {
+                out.append(first ? "-" : " - ");
+                item.accept(out, term);
+                first = false;
+            }
+            if (constant != 0) {
+                out.append(constant > 0 ? " + " : " - ").append(Math.abs((long) constant));
+            }
+        }
+
+        int precedence() {
+            if (!infix) return 0;
+            var single = single();
+            if (single != null) return Arithmetic.precedence(single);
+            return added.length == 0 && subtracted.length == 1 && constant == 0 ? Arithmetic.UNARY : Arithmetic.ADDITIVE;
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            long min = fixedMin;
+            for (DiceExpression term : added) {
+                if (!isFixed(term)) min += term.min(arguments);
+            }
+            for (DiceExpression term : subtracted) {
+                if (!isFixed(term)) min -= term.max(arguments);
+            }
+            return min;
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            long max = fixedMax;
+            for (DiceExpression term : added) {
+                if (!isFixed(term)) max += term.max(arguments);
+            }
+            for (DiceExpression term : subtracted) {
+                if (!isFixed(term)) max -= term.min(arguments);
+            }
+            return max;
+        }
     }
 
     public static class BinaryOperator implements DiceExpression {
 
         private final String symbol;
-        private final java.util.function.BinaryOperator<Integer> operation;
-        private final List<DiceExpression> items;
+        private final LongBinaryOperator operation;
+        private final DiceExpression[] items;
 
-        public BinaryOperator(String symbol, java.util.function.BinaryOperator<Integer> operation, List<DiceExpression> items) {
+        public BinaryOperator(String symbol, LongBinaryOperator operation, List<DiceExpression> items) {
             this.symbol = symbol;
             this.operation = operation;
-            this.items = items;
+            this.items = items.toArray(DiceExpression[]::new);
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public List<DiceExpression> getItems() {
+            return List.of(items);
         }
 
         @Override
-        public Result eval(Rand rand) {
-            var results = items.stream().map(i -> i.eval(rand)).toList();
-            var description = results.stream().map(Result::description).collect(Collectors.joining(" ")).trim();
+        public long evalValue(Rand rand, int[] arguments, Trace trace) {
+            // Every item is evaluated, a lone item included, so the rolls line up with the description.
+            long value = 0;
+            for (int i = 0; i < items.length; i++) {
+                long item = items[i].evalValue(rand, arguments, trace);
+                value = i == 0 ? item : operation.applyAsLong(value, item);
+            }
+            return items.length > 1 ? value : 0;
+        }
+
+        @Override
+        public void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            if (items.length < 2) {
+                Arrays.fill(out, 0, n, 0);
+                return;
+            }
+            items[0].evalMany(rand, n, out, arguments);
+            int[] operand = new int[n];
+            for (int item = 1; item < items.length; item++) {
+                items[item].evalMany(rand, n, operand, arguments);
+                for (int i = 0; i < n; i++) {
+                    out[i] = Math.toIntExact(operation.applyAsLong(out[i], operand[i]));
+                }
+            }
+        }
 
-            int max = 0;
-            int min = 0;
-            int value = 0;
-            if (results.size() > 1) {
-                max = results.getFirst().max();
-                min = results.getFirst().min();
-                value = results.getFirst().value();
+        @Override
+        public void describe(StringBuilder out, Trace trace) {
+            var description = new StringBuilder();
+            for (int i = 0; i < items.length; i++) {
+                if (i > 0) description.append(' ');
+                items[i].describe(description, trace);
+            }
+            out.append(symbol).append(' ').append(description.toString().trim());
+        }
+
+        @Override
+        public long min(int[] arguments) {
+            if (items.length < 2) return 0;
+            long min = items[0].min(arguments);
+            for (int i = 1; i < items.length; i++) {
+                min = operation.applyAsLong(min, items[i].min(arguments));
             }
-            for (int i = 1; i < results.size(); i++) {
-                Result result = results.get(i);
-                max = operation.apply(max, result.max());
-                min = operation.apply(min, result.min());
-                value = operation.apply(value, result.value());
+            return min;
+        }
+
+        @Override
+        public long max(int[] arguments) {
+            if (items.length < 2) return 0;
+            long max = items[0].max(arguments);
+            for (int i = 1; i < items.length; i++) {
+                max = operation.applyAsLong(max, items[i].max(arguments));
             }
+            return max;
+        }
+    }
 
 
-            return new Result(symbol + " " + description,
+    public interface DiceExpression {
+        int[] NO_ARGUMENTS = new int[0];
+
+        default Result eval(Rand rand) {
+            return eval(rand, NO_ARGUMENTS);
+        }
+
+        /**
+         * Evaluates the expression with placeholder slot {@code i} bound to {@code arguments[i]}. The
+         * description is only built if {@link Result#description()} is called.
+         */
+        default Result eval(Rand rand, int[] arguments) {
+            var trace = new Trace();
+            long value = evalValue(rand, arguments, trace);
+            return new Result(
+                    () -> {
+                        var description = new StringBuilder();
+                        describe(description, trace.rewind());
+                        return description.toString();
+                    },
                     true,
                     value,
-                    min,
-                    max
+                    min(arguments),
+                    max(arguments)
             );
         }
-    }
 
+        default long evalValue(Rand rand) {
+            return evalValue(rand, NO_ARGUMENTS, null);
+        }
+
+        /**
+         * Rolls the expression and returns only its value. When {@code trace} is not null the numbers
+         * {@link #describe} needs are recorded in it, otherwise nothing is allocated.
+         */
+        long evalValue(Rand rand, int[] arguments, Trace trace);
 
-    public interface DiceExpression {
+        /**
+         * Writes the values of {@code n} independent evaluations to {@code out[0..n)} without building a
+         * {@link Result} per roll.
+         */
+        default void evalMany(Rand rand, int n, int[] out) {
+            evalMany(rand, n, out, NO_ARGUMENTS);
+        }
+
+        default void evalMany(Rand rand, int n, int[] out, int[] arguments) {
+            for (int i = 0; i < n; i++) {
+                out[i] = Math.toIntExact(evalValue(rand, arguments, null));
+            }
+        }
 
-        Result eval(Rand rand);
+        /**
+         * Appends the human-readable form of a roll, reading the numbers recorded by {@link #evalValue}
+         * in the order they were recorded.
+         */
+        void describe(StringBuilder out, Trace trace);
 
-        record Result(String description, boolean valid, int value, int min, int max) {
+        long min(int[] arguments);
+
+        long max(int[] arguments);
+
+        final class Result {
+            private final boolean valid;
+            private final long value;
+            private final long min;
+            private final long max;
+            private Supplier<String> describer;
+            private String description;
+
+            public Result(String description, boolean valid, long value, long min, long max) {
+                this.description = description;
+                this.valid = valid;
+                this.value = value;
+                this.min = min;
+                this.max = max;
+            }
+
+            public Result(Supplier<String> description, boolean valid, long value, long min, long max) {
+                this.describer = description;
+                this.valid = valid;
+                this.value = value;
+                this.min = min;
+                this.max = max;
+            }
 
+            public synchronized String description() {
+                if (description == null) {
+                    description = describer.get();
+                    describer = null;
+                }
+                return description;
+            }
+
+            public boolean valid() {
+                return valid;
+            }
+
+            public long value() {
+                return value;
+            }
+
+            public long min() {
+                return min;
+            }
+
+            public long max() {
+                return max;
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (!(o instanceof Result result)) return false;
+                return valid == result.valid && value == result.value && min == result.min && max == result.max
+                        && description().equals(result.description());
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(description(), valid, value, min, max);
+            }
+
+            @Override
+            public String toString() {
+                return "Result[" +
+                        "description=" + description() +
+                        ", valid=" + valid +
+                        ", value=" + value +
+                        ", min=" + min +
+                        ", max=" + max +
+                        ']';
+            }
+        }
+
+        /**
+         * Numbers recorded while rolling, in evaluation order, so a description can be written later.
+         */
+        final class Trace {
+            private long[] values = new long[8];
+            private int size;
+            private int position;
+
+            public void add(long value) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = value;
+            }
+
+            public long next() {
+                return values[position++];
+            }
+
+            public Trace rewind() {
+                position = 0;
+                return this;
+            }
         }
 
         interface Rand {
@@ -173,6 +1137,28 @@ public class Parser {
              * Returns a number between 1 and max
              */
             int random(int max);
+
+            /**
+             * Returns a number in [0, 1)
+             */
+            default double nextDouble() {
+                long high = random(1 << 26) - 1;
+                long low = random(1 << 27) - 1;
+                return ((high << 27) | low) * 0x1.0p-53;
+            }
+
+            /**
+             * Fills {@code out} with numbers between 1 and max
+             */
+            default void fill(int[] out, int max) {
+                fill(out, 0, out.length, max);
+            }
+
+            default void fill(int[] out, int from, int to, int max) {
+                for (int i = from; i < to; i++) {
+                    out[i] = random(max);
+                }
+            }
         }
     }
 }
@@ -0,0 +1,120 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression.Rand;
+
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
+
+/**
+ * The random numbers for one session. A root generator of the configured algorithm is split once per
+ * thread, so threads rolling at the same time never contend on a shared seed. Reseeding makes every
+ * thread split a fresh stream from the new root on its next roll, which keeps single-threaded runs
+ * reproducible.
+ */
+public class RandomStreams {
+    public static final String DEFAULT_ALGORITHM = "L64X128MixRandom";
+
+    private final ThreadLocal<Stream> streams = new ThreadLocal<>();
+    private volatile Root root;
+
+    public RandomStreams() {
+        this(DEFAULT_ALGORITHM);
+    }
+
+    public RandomStreams(String algorithm) {
+        var factory = factory(algorithm);
+        this.root = new Root(algorithm, factory, factory.create(), 0);
+    }
+
+    public RandomStreams(String algorithm, long seed) {
+        var factory = factory(algorithm);
+        this.root = new Root(algorithm, factory, factory.create(seed), 0);
+    }
+
+    /**
+     * The calling thread's stream.
+     */
+    public Rand current() {
+        var root = this.root;
+        var stream = streams.get();
+        if (stream == null || stream.generation != root.generation) {
+            stream = new Stream(root.split(), root.generation);
+            streams.set(stream);
+        }
+        return stream;
+    }
+
+    /**
+     * A new, independent generator split from the session, for work handed to other threads.
+     */
+    public Rand split() {
+        return new Stream(root.split(), -1);
+    }
+
+    public void seed(long seed) {
+        seed(root.algorithm, seed);
+    }
+
+    public synchronized void seed(String algorithm, long seed) {
+        var factory = factory(algorithm);
+        root = new Root(algorithm, factory, factory.create(seed), root.generation + 1);
+    }
+
+    public String getAlgorithm() {
+        return root.algorithm;
+    }
+
+    private static RandomGeneratorFactory<RandomGenerator> factory(String algorithm) {
+        try {
+            return RandomGeneratorFactory.of(algorithm);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown random algorithm " + algorithm);
+        }
+    }
+
+    private record Root(
+            String algorithm,
+            RandomGeneratorFactory<RandomGenerator> factory,
+            RandomGenerator generator,
+            long generation
+    ) {
+        /**
+         * Splittable algorithms split; the rest seed a new generator from the root. Either way the
+         * root is only touched here, once per thread.
+         */
+        synchronized RandomGenerator split() {
+            if (generator instanceof RandomGenerator.SplittableGenerator splittable) {
+                return splittable.split();
+            }
+            return factory.create(generator.nextLong());
+        }
+    }
+
+    private static final class Stream implements Rand {
+        private final RandomGenerator generator;
+        private final long generation;
+
+        private Stream(RandomGenerator generator, long generation) {
+            this.generator = generator;
+            this.generation = generation;
+        }
+
+        @Override
+        public int random(int max) {
+            return 1 + generator.nextInt(max);
+        }
+
+        @Override
+        public double nextDouble() {
+            return generator.nextDouble();
+        }
+
+        @Override
+        public void fill(int[] out, int from, int to, int max) {
+            var generator = this.generator;
+            for (int i = from; i < to; i++) {
+                out[i] = 1 + generator.nextInt(max);
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.tomakeitgo.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import com.tomakeitgo.dice.Parser.DiceExpression.Rand;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Monte Carlo estimate of a dice expression: the histogram of {@code n} rolls made across all cores.
+ * <p>
+ * The rolls are divided between fork-join workers, each with its own stream split from the session
+ * before any worker starts, so a seeded session gives the same histogram however the work is
+ * scheduled. Each worker counts into a primitive histogram and the histograms are merged at the end.
+ * <p>
+ * Interrupting the thread that started a simulation stops it: the workers see it within a block of
+ * rolls, and the simulation throws {@link CancellationException}.
+ */
+public class Simulation {
+    /**
+     * Fewest rolls worth handing to a worker of their own.
+     */
+    static final long MIN_ROLLS_PER_WORKER = 1 << 14;
+
+    /**
+     * Rolls a worker makes between checks for cancellation, less one.
+     */
+    private static final long CHECK_MASK = (1 << 12) - 1;
+
+    /**
+     * Widest range of values a histogram will cover.
+     */
+    public static final int MAX_HISTOGRAM_WIDTH = 1 << 24;
+
+    private final long offset;
+    private final long[] counts;
+    private final long rolls;
+
+    private Simulation(long offset, long[] counts, long rolls) {
+        this.offset = offset;
+        this.counts = counts;
+        this.rolls = rolls;
+    }
+
+    public static Simulation run(DiceProgram program, long n, RandomStreams random, int... arguments) {
+        if (arguments.length != program.getPlaceholders().size()) {
+            throw new IllegalArgumentException(
+                    "Expected " + program.getPlaceholders().size() + " arguments for " + program.getPlaceholders() + " but got " + arguments.length
+            );
+        }
+        return run(program.getExpression(), arguments, n, random, ForkJoinPool.commonPool());
+    }
+
+    public static Simulation run(DiceExpression expression, int[] arguments, long n, RandomStreams random, ForkJoinPool pool) {
+        if (n < 1) throw new IllegalArgumentException("A simulation needs at least one roll");
+
+        long workers = Math.max(1, Math.min(pool.getParallelism() * 4L, n / MIN_ROLLS_PER_WORKER));
+        var cancelled = new AtomicBoolean();
+        var tasks = new ArrayList<Worker>();
+        long start = 0;
+        for (long i = 0; i < workers; i++) {
+            long end = n * (i + 1) / workers;
+            tasks.add(new Worker(expression, arguments, end - start, random.split(), cancelled));
+            start = end;
+        }
+
+        var simulation = pool.submit(new RecursiveTask<Histogram>() {
+            @Override
+            protected Histogram compute() {
+                var merged = new Histogram();
+                for (Worker worker : ForkJoinTask.invokeAll(tasks)) {
+                    merged.merge(worker.join());
+                }
+                return merged;
+            }
+        });
+        // Waited for with get rather than invoke, which would not notice an interrupt.
+        try {
+            return simulation.get().toSimulation();
+        } catch (InterruptedException e) {
+            cancelled.set(true);
+            simulation.cancel(true);
+            throw new CancellationException("Simulation cancelled");
+        } catch (ExecutionException e) {
+            throw thrownByWorker(e.getCause());
+        }
+    }
+
+    // An exception from a worker on another thread comes back as a copy of the same class whose cause
+    // is the original, and whose message is the original's toString (or null).
+    private static RuntimeException thrownByWorker(Throwable thrown) {
+        if (thrown instanceof Error error) throw error;
+        if (!(thrown instanceof RuntimeException e)) return new IllegalStateException(thrown);
+        return e.getCause() instanceof RuntimeException cause && cause.getClass() == e.getClass() ? cause : e;
+    }
+
+    public long rolls() {
+        return rolls;
+    }
+
+    public long min() {
+        return offset;
+    }
+
+    public long max() {
+        return offset + counts.length - 1;
+    }
+
+    /**
+     * Number of rolls that came up {@code value}.
+     */
+    public long frequency(long value) {
+        long index = value - offset;
+        if (index < 0 || index >= counts.length) return 0;
+        return counts[(int) index];
+    }
+
+    public double mean() {
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            sum += (double) i * counts[i];
+        }
+        return offset + sum / rolls;
+    }
+
+    public double variance() {
+        double mean = mean() - offset;
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            double delta = i - mean;
+            sum += delta * delta * counts[i];
+        }
+        return sum / rolls;
+    }
+
+    public double stddev() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * Smallest rolled value at or above the given fraction of the rolls, {@code fraction} in [0, 1].
+     */
+    public long percentile(double fraction) {
+        if (fraction < 0 || fraction > 1) throw new IllegalArgumentException("percentile must be between 0 and 1");
+        double target = fraction * rolls;
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            if (counts[i] > 0 && cumulative >= target) return offset + i;
+        }
+        return max();
+    }
+
+    /**
+     * The rolled values from lowest to highest paired with how often they came up, skipping values
+     * that never did.
+     */
+    public List<long[]> histogram() {
+        var result = new ArrayList<long[]>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) result.add(new long[]{offset + i, counts[i]});
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "Simulation{" +
+                "rolls=" + rolls +
+                ", min=" + min() +
+                ", max=" + max() +
+                ", mean=" + mean() +
+                '}';
+    }
+
+    // Fork-join tasks are serializable, but a worker is never serialized.
+    private static class Worker extends RecursiveTask<Histogram> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final transient DiceExpression expression;
+        private final int[] arguments;
+        private final long rolls;
+        private final transient Rand rand;
+        private final AtomicBoolean cancelled;
+
+        private Worker(DiceExpression expression, int[] arguments, long rolls, Rand rand, AtomicBoolean cancelled) {
+            this.expression = expression;
+            this.arguments = arguments;
+            this.rolls = rolls;
+            this.rand = rand;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        protected Histogram compute() {
+            var histogram = new Histogram();
+            for (long i = 0; i < rolls; i++) {
+                if ((i & CHECK_MASK) == 0 && cancelled.get()) {
+                    throw new CancellationException("Simulation cancelled");
+                }
+                histogram.add(expression.evalValue(rand, arguments, null));
+            }
+            return histogram;
+        }
+    }
+
+    /**
+     * Counts per value over a window that grows to cover whatever has been rolled so far.
+     */
+    private static class Histogram {
+        private long offset;
+        private long[] counts = new long[0];
+        private long rolls;
+
+        void add(long value) {
+            long index = value - offset;
+            if (index < 0 || index >= counts.length) {
+                cover(value, value);
+                index = value - offset;
+            }
+            counts[(int) index]++;
+            rolls++;
+        }
+
+        void merge(Histogram other) {
+            if (other.rolls == 0) return;
+            cover(other.offset, other.offset + other.counts.length - 1);
+            int shift = (int) (other.offset - offset);
+            for (int i = 0; i < other.counts.length; i++) {
+                counts[shift + i] += other.counts[i];
+            }
+            rolls += other.rolls;
+        }
+
+        private void cover(long low, long high) {
+            if (counts.length == 0) {
+                offset = low;
+                counts = new long[width(low, high)];
+                return;
+            }
+            long currentHigh = offset + counts.length - 1;
+            if (low >= offset && high <= currentHigh) return;
+
+            long newLow = Math.min(low, offset);
+            long newHigh = Math.max(high, currentHigh);
+            width(newLow, newHigh);
+
+            // Grow by half again so a slowly drifting range does not copy on every roll.
+            long slack = counts.length / 2;
+            long paddedLow = newLow < offset ? Math.min(newLow, offset - slack) : newLow;
+            long paddedHigh = newHigh > currentHigh ? Math.max(newHigh, currentHigh + slack) : newHigh;
+            if (paddedHigh - paddedLow + 1 <= MAX_HISTOGRAM_WIDTH) {
+                newLow = paddedLow;
+                newHigh = paddedHigh;
+            }
+
+            var grown = new long[width(newLow, newHigh)];
+            System.arraycopy(counts, 0, grown, (int) (offset - newLow), counts.length);
+            offset = newLow;
+            counts = grown;
+        }
+
+        private static int width(long low, long high) {
+            long width = high - low + 1;
+            if (width > MAX_HISTOGRAM_WIDTH) {
+                throw new IllegalArgumentException("Rolled values span more than " + MAX_HISTOGRAM_WIDTH + " values");
+            }
+            return (int) width;
+        }
+
+        Simulation toSimulation() {
+            // Trim the slack left from growing.
+            int first = 0;
+            while (first < counts.length && counts[first] == 0) first++;
+            int last = counts.length - 1;
+            while (last > first && counts[last] == 0) last--;
+            return new Simulation(offset + first, Arrays.copyOfRange(counts, first, last + 1), rolls);
+        }
+    }
+}
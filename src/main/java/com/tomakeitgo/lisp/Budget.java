@@ -0,0 +1,15 @@
+package com.tomakeitgo.lisp;
+
+/**
+ * How much an evaluation may do before it is stopped: at most {@code steps} lambda calls, and at most
+ * {@code millis} milliseconds of wall-clock time. {@link Long#MAX_VALUE} for either means no limit.
+ */
+public record Budget(long steps, long millis) {
+    public static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    public Budget {
+        if (steps < 0 || millis < 0) {
+            throw new IllegalArgumentException("A budget needs at least zero steps and milliseconds");
+        }
+    }
+}
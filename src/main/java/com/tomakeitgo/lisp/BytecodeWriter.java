@@ -0,0 +1,340 @@
+package com.tomakeitgo.lisp;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Just enough of the class file format for {@link Jit}: a final class implementing one interface, with a
+ * field {@code k} holding an {@code Object[]}, a public constructor that sets it, and one public method
+ * whose code is written through this writer.
+ * <p>
+ * Every branch target gets the same full stack map frame: the method's locals all hold a value of the
+ * type given for them, and the operand stack is empty. Code written here must keep to that, so it
+ * initialises every local before its first branch and keeps nothing on the stack across one.
+ */
+final class BytecodeWriter {
+    static final int ACONST_NULL = 0x01;
+    static final int AALOAD = 0x32;
+    static final int AASTORE = 0x53;
+    static final int DUP = 0x59;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+    static final int INSTANCEOF = 0xc1;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int ALOAD = 0x19;
+    private static final int ASTORE = 0x3a;
+    private static final int RETURN = 0xb1;
+    private static final int PUTFIELD = 0xb5;
+    private static final int INVOKESPECIAL = 0xb7;
+
+    // The longest branch a two-byte offset can make, and so the longest method written here.
+    private static final int MAX_CODE = Short.MAX_VALUE;
+
+    /**
+     * A position in the code, bound once its offset is known.
+     */
+    static final class Label {
+        private int offset = -1;
+    }
+
+    private record Jump(int at, Label to) {
+    }
+
+    private final String name;
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final HashMap<String, Integer> entries = new HashMap<>();
+    private int poolSize = 1;
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final List<Jump> jumps = new ArrayList<>();
+    private final List<Label> targets = new ArrayList<>();
+    // Whether the last instruction was a goto or return, so the next must be a branch target.
+    private boolean unreachable;
+
+    /**
+     * A writer for a class with the internal name {@code name}.
+     */
+    BytecodeWriter(String name) {
+        this.name = name;
+    }
+
+    void op(int opcode) {
+        instruction();
+        code.write(opcode);
+        unreachable = opcode == ARETURN || opcode == GOTO;
+    }
+
+    void aload(int local) {
+        op(ALOAD);
+        code.write(local);
+    }
+
+    void astore(int local) {
+        op(ASTORE);
+        code.write(local);
+    }
+
+    void push(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH);
+            u2(code, value);
+        } else {
+            throw new IllegalStateException("Constant " + value + " does not fit in a push");
+        }
+    }
+
+    /**
+     * A {@code checkcast}, {@code instanceof} or {@code anewarray} of the class with internal name {@code type}.
+     */
+    void type(int opcode, String type) {
+        op(opcode);
+        u2(code, classRef(type));
+    }
+
+    void field(int opcode, String owner, String field, String descriptor) {
+        op(opcode);
+        u2(code, reference(9, owner, field, descriptor));
+    }
+
+    void invoke(int opcode, String owner, String method, String descriptor) {
+        op(opcode);
+        u2(code, reference(10, owner, method, descriptor));
+    }
+
+    void jump(int opcode, Label to) {
+        int at = code.size();
+        op(opcode);
+        jumps.add(new Jump(at, to));
+        u2(code, 0);
+    }
+
+    void bind(Label label) {
+        label.offset = code.size();
+        targets.add(label);
+        unreachable = false;
+    }
+
+    /**
+     * The class, with the code written so far as the body of {@code method}. The method has a local for
+     * each of {@code localTypes}, and local {@code i} holds a value of class {@code localTypes[i]} at
+     * every branch target.
+     */
+    byte[] toByteArray(String interfaceName, String method, String descriptor, int maxStack, String[] localTypes) {
+        if (!unreachable) {
+            throw new IllegalStateException("The method can run off the end of its code");
+        }
+        if (code.size() > MAX_CODE) {
+            throw new IllegalStateException("The method is too long to compile");
+        }
+        byte[] body = code.toByteArray();
+        for (Jump jump : jumps) {
+            if (jump.to().offset < 0) {
+                throw new IllegalStateException("A branch goes to a label that was never bound");
+            }
+            int delta = jump.to().offset - jump.at();
+            body[jump.at() + 1] = (byte) (delta >> 8);
+            body[jump.at() + 2] = (byte) delta;
+        }
+
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        int interfaceClass = classRef(interfaceName);
+        int codeName = utf8("Code");
+        int fieldName = utf8("k");
+        int fieldType = utf8("[Ljava/lang/Object;");
+        int constructor = utf8("<init>");
+        int constructorType = utf8("([Ljava/lang/Object;)V");
+        int objectConstructor = reference(10, "java/lang/Object", "<init>", "()V");
+        int fieldRef = reference(9, name, "k", "[Ljava/lang/Object;");
+        int methodName = utf8(method);
+        int methodType = utf8(descriptor);
+        byte[] frames = frames(localTypes);
+        int stackMapName = utf8("StackMapTable");
+
+        var out = new ByteArrayOutputStream();
+        u4(out, 0xCAFEBABE);
+        u2(out, 0);
+        u2(out, 52);
+        u2(out, poolSize);
+        out.writeBytes(pool.toByteArray());
+        u2(out, 0x1000 | 0x0020 | 0x0010);
+        u2(out, thisClass);
+        u2(out, superClass);
+        u2(out, 1);
+        u2(out, interfaceClass);
+
+        u2(out, 1);
+        u2(out, 0x0002 | 0x0010);
+        u2(out, fieldName);
+        u2(out, fieldType);
+        u2(out, 0);
+
+        u2(out, 2);
+        byte[] init = {
+                0x2a, (byte) INVOKESPECIAL, (byte) (objectConstructor >> 8), (byte) objectConstructor,
+                0x2a, 0x2b, (byte) PUTFIELD, (byte) (fieldRef >> 8), (byte) fieldRef,
+                (byte) RETURN
+        };
+        u2(out, 0x0001);
+        u2(out, constructor);
+        u2(out, constructorType);
+        u2(out, 1);
+        codeAttribute(out, codeName, 2, 2, init, 0, null);
+
+        u2(out, 0x0001);
+        u2(out, methodName);
+        u2(out, methodType);
+        u2(out, 1);
+        codeAttribute(out, codeName, maxStack, localTypes.length, body, stackMapName, frames);
+
+        u2(out, 0);
+        return out.toByteArray();
+    }
+
+    private static void codeAttribute(ByteArrayOutputStream out, int codeName, int maxStack, int maxLocals, byte[] body,
+                                      int stackMapName, byte[] frames) {
+        u2(out, codeName);
+        u4(out, 12 + body.length + (frames == null ? 0 : 6 + frames.length));
+        u2(out, maxStack);
+        u2(out, maxLocals);
+        u4(out, body.length);
+        out.writeBytes(body);
+        u2(out, 0);
+        if (frames == null) {
+            u2(out, 0);
+        } else {
+            u2(out, 1);
+            u2(out, stackMapName);
+            u4(out, frames.length);
+            out.writeBytes(frames);
+        }
+    }
+
+    // One full frame for each distinct branch target, in offset order.
+    private byte[] frames(String[] localTypes) {
+        var offsets = new TreeMap<Integer, Label>();
+        for (Label target : targets) {
+            if (target.offset >= code.size()) {
+                throw new IllegalStateException("A branch target is past the end of the code");
+            }
+            offsets.put(target.offset, target);
+        }
+        int[] types = new int[localTypes.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = classRef(localTypes[i]);
+        }
+
+        var out = new ByteArrayOutputStream();
+        u2(out, offsets.size());
+        int previous = -1;
+        for (int offset : offsets.keySet()) {
+            out.write(255);
+            u2(out, offset - previous - 1);
+            u2(out, types.length);
+            for (int type : types) {
+                out.write(7);
+                u2(out, type);
+            }
+            u2(out, 0);
+            previous = offset;
+        }
+        return out.toByteArray();
+    }
+
+    private void instruction() {
+        if (unreachable) {
+            throw new IllegalStateException("Code after a goto or return must start at a branch target");
+        }
+    }
+
+    private int utf8(String value) {
+        return entry("1:" + value, () -> {
+            pool.write(1);
+            var bytes = modifiedUtf8(value);
+            u2(pool, bytes.length);
+            pool.writeBytes(bytes);
+        });
+    }
+
+    private int classRef(String internalName) {
+        int utf8 = utf8(internalName);
+        return entry("7:" + internalName, () -> {
+            pool.write(7);
+            u2(pool, utf8);
+        });
+    }
+
+    private int reference(int tag, String owner, String member, String descriptor) {
+        int ownerClass = classRef(owner);
+        int memberName = utf8(member);
+        int memberType = utf8(descriptor);
+        int nameAndType = entry("12:" + member + ":" + descriptor, () -> {
+            pool.write(12);
+            u2(pool, memberName);
+            u2(pool, memberType);
+        });
+        return entry(tag + ":" + owner + "." + member + ":" + descriptor, () -> {
+            pool.write(tag);
+            u2(pool, ownerClass);
+            u2(pool, nameAndType);
+        });
+    }
+
+    private int entry(String key, Runnable write) {
+        var index = entries.get(key);
+        if (index != null) return index;
+        if (poolSize == 0xFFFF) {
+            throw new IllegalStateException("The constant pool is full");
+        }
+        write.run();
+        entries.put(key, poolSize);
+        return poolSize++;
+    }
+
+    // Names here are plain Java identifiers and descriptors, but a NUL would need two bytes.
+    private static byte[] modifiedUtf8(String value) {
+        var out = new ByteArrayOutputStream();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 1 && c <= 0x7f) {
+                out.write(c);
+            } else if (c <= 0x7ff) {
+                out.write(0xc0 | (c >> 6));
+                out.write(0x80 | (c & 0x3f));
+            } else {
+                out.write(0xe0 | (c >> 12));
+                out.write(0x80 | ((c >> 6) & 0x3f));
+                out.write(0x80 | (c & 0x3f));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static void u2(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    private static void u4(ByteArrayOutputStream out, int value) {
+        u2(out, value >>> 16);
+        u2(out, value & 0xFFFF);
+    }
+}
@@ -0,0 +1,306 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.*;
+import com.tomakeitgo.lisp.operators.control.AndOperator;
+import com.tomakeitgo.lisp.operators.control.CondOperator;
+import com.tomakeitgo.lisp.operators.control.IfOperator;
+import com.tomakeitgo.lisp.operators.control.OrOperator;
+import com.tomakeitgo.lisp.operators.control.WithBudgetOperator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns a parsed form into a tree of {@link Node}s once, so evaluating it again, or calling a lambda
+ * whose body it is, does not re-examine the form.
+ * <p>
+ * The nodes keep the semantics of {@link Interpreter}'s tree walker exactly. A list is still dispatched
+ * on what its head is bound to when it runs, since any binding can change: {@code (if a b c)} compiles
+ * to an if node that checks {@code if} is still bound to the if operator and otherwise runs as a plain
+ * call. Forms that the special operators would reject, such as an {@code if} without three arguments,
+ * compile to plain calls so the operator reports the error as before.
+ * <p>
+ * A name that is a parameter of an enclosing lambda compiles to its lexical address, the number of
+ * call frames out and the slot in that frame, since a parameter can be reassigned but never shadowed
+ * from inside. Every other name is looked up by {@link SContext#find} when it runs.
+ * <p>
+ * A call to a compiled lambda in tail position, the last statement of a lambda body or a branch of an
+ * {@code if} or {@code cond} there, is not made: the node returns a {@link TailCall} and the calling
+ * lambda's loop makes it in place of its own frame, so self-recursive loops run in constant stack.
+ * <p>
+ * A lambda called often enough has its body compiled again, to bytecode, by {@link Jit}.
+ */
+public class Compiler {
+    static final SAtom DEF = SAtom.of("def");
+    static final SAtom LAMBDA = SAtom.of("lambda");
+    static final SAtom IF = SAtom.of("if");
+    static final SAtom COND = SAtom.of("cond");
+    static final SAtom AND = SAtom.of("and");
+    static final SAtom OR = SAtom.of("or");
+
+    private Compiler() {
+    }
+
+    /**
+     * A compiled form.
+     */
+    interface Node {
+        SExpression eval(Interpreter interpreter, SContext definitions);
+
+        /**
+         * Evaluates this node in tail position: the result is either the value, or a {@link TailCall}
+         * the caller must make to get it.
+         */
+        default Object tail(Interpreter interpreter, SContext definitions) {
+            return eval(interpreter, definitions);
+        }
+    }
+
+    /**
+     * A call to a compiled lambda left for the lambda whose body it ends.
+     */
+    record TailCall(Lambda lambda, List<SExpression> arguments) {
+    }
+
+    /**
+     * The parameters of the lambdas around a form, innermost first.
+     */
+    private record Scope(SExpression[] names, Scope parent) {
+    }
+
+    public static Node compile(SExpression expression) {
+        return compile(expression, null);
+    }
+
+    private static Node compile(SExpression expression, Scope scope) {
+        return switch (expression) {
+            case SAtom atom -> variable(atom, scope);
+            case SList list when !list.value().isEmpty() -> list(list, scope);
+            default -> new Constant(expression);
+        };
+    }
+
+    private static Node[] compileAll(List<SExpression> expressions, Scope scope) {
+        var nodes = new Node[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(expressions.get(i), scope);
+        }
+        return nodes;
+    }
+
+    // Like the tree walker, the body includes the argument list as its first statement.
+    private static Node[] lambdaBody(List<SExpression> remaining, Scope scope) {
+        return compileAll(remaining, new Scope(Lambda.parameters(remaining.getFirst()), scope));
+    }
+
+    private static Node variable(SAtom name, Scope scope) {
+        int depth = 0;
+        for (Scope frame = scope; frame != null; frame = frame.parent(), depth++) {
+            for (int slot = frame.names().length - 1; slot >= 0; slot--) {
+                if (frame.names()[slot].equals(name)) return new Local(depth, slot);
+            }
+        }
+        return new Variable(name);
+    }
+
+    private static Node list(SList list, Scope scope) {
+        var call = new Call(list, scope);
+        // A parameter named like a special form hides it, so the form is whatever was passed in.
+        if (!(list.value().getFirst() instanceof SAtom head) || call.headNode instanceof Local) return call;
+
+        var rest = call.rest;
+        return switch (head.value()) {
+            case "def" -> rest.size() >= 2 ? new Def(call, rest.get(0), call.arguments()[1]) : call;
+            case "lambda" -> rest.isEmpty() ? call : new MakeLambda(call, lambdaBody(rest, scope));
+            case "if" -> rest.size() == 3 ? new If(call, call.arguments()[0], call.arguments()[1], call.arguments()[2]) : call;
+            case "cond" -> isCond(rest) ? cond(call, rest, scope) : call;
+            case "and", "or" -> rest.size() >= 2 ? new AndOr(call, head.value().equals("and"), call.arguments()) : call;
+            default -> call;
+        };
+    }
+
+    private static boolean isCond(List<SExpression> clauses) {
+        if (clauses.isEmpty()) return false;
+        for (SExpression clause : clauses) {
+            if (!(clause instanceof SList pair) || pair.value().size() != 2) return false;
+        }
+        return true;
+    }
+
+    private static Node cond(Call call, List<SExpression> clauses, Scope scope) {
+        var tests = new Node[clauses.size()];
+        var values = new Node[clauses.size()];
+        for (int i = 0; i < tests.length; i++) {
+            var pair = ((SList) clauses.get(i)).value();
+            tests[i] = compile(pair.get(0), scope);
+            values[i] = compile(pair.get(1), scope);
+        }
+        return new Cond(call, tests, values);
+    }
+
+    record Constant(SExpression value) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            return value;
+        }
+    }
+
+    record Variable(SAtom name) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            return definitions.find(name);
+        }
+    }
+
+    record Local(int depth, int slot) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            return definitions.slot(depth, slot);
+        }
+    }
+
+    /**
+     * Any non-empty list, dispatched the way the tree walker dispatches it.
+     */
+    static final class Call implements Node {
+        private final SList source;
+        private final Scope scope;
+        final SExpression head;
+        final Node headNode;
+        private final List<SExpression> rest;
+        // Compiled on first use: a lambda form only needs its arguments if lambda has been rebound, and
+        // compiling them eagerly would compile nested lambda bodies twice over at every level.
+        private Node[] arguments;
+        private Node[] lambdaBody;
+
+        Call(SList source, Scope scope) {
+            this.source = source;
+            this.scope = scope;
+            this.head = source.value().getFirst();
+            this.headNode = head instanceof SAtom || head instanceof SList ? compile(head, scope) : null;
+            this.rest = source.value().subList(1, source.value().size());
+        }
+
+        Node[] arguments() {
+            if (arguments == null) {
+                arguments = compileAll(rest, scope);
+            }
+            return arguments;
+        }
+
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            return (SExpression) call(interpreter, definitions, false);
+        }
+
+        @Override
+        public Object tail(Interpreter interpreter, SContext definitions) {
+            return call(interpreter, definitions, true);
+        }
+
+        private Object call(Interpreter interpreter, SContext definitions, boolean tail) {
+            var key = head instanceof SAtom ? headNode.eval(interpreter, definitions) : definitions.find(head);
+
+            if (DEF.equals(key)) {
+                definitions.set(rest.get(0), arguments()[1].eval(interpreter, definitions));
+                return rest.get(0);
+            } else if (LAMBDA.equals(key)) {
+                if (lambdaBody == null) {
+                    lambdaBody = lambdaBody(rest, scope);
+                }
+                return new Lambda(rest, definitions, lambdaBody);
+            } else if (key instanceof SList keyList) {
+                key = keyList == head ? headNode.eval(interpreter, definitions) : interpreter.eval(keyList, definitions);
+            }
+            if (key instanceof IfOperator || key instanceof CondOperator || key instanceof AndOperator || key instanceof OrOperator
+                    || key instanceof WithBudgetOperator) {
+                return ((Operator) key).eval(rest, interpreter, definitions);
+            } else if (key instanceof Operator operator) {
+                var arguments = arguments();
+                var values = new SExpression[arguments.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = arguments[i].eval(interpreter, definitions);
+                }
+                if (tail && operator instanceof Lambda lambda && lambda.isCompiled()) {
+                    return new TailCall(lambda, Arrays.asList(values));
+                }
+                return operator.eval(Arrays.asList(values), interpreter, definitions);
+            }
+            return source;
+        }
+    }
+
+    record Def(Call call, SExpression name, Node value) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            if (!DEF.equals(definitions.find(DEF))) return call.eval(interpreter, definitions);
+            definitions.set(name, value.eval(interpreter, definitions));
+            return name;
+        }
+    }
+
+    record MakeLambda(Call call, Node[] body) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            if (!LAMBDA.equals(definitions.find(LAMBDA))) return call.eval(interpreter, definitions);
+            return new Lambda(call.rest, definitions, body);
+        }
+    }
+
+    record If(Call call, Node test, Node then, Node otherwise) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            if (!(definitions.find(IF) instanceof IfOperator)) return call.eval(interpreter, definitions);
+            return Interpreter.TRUE.equals(test.eval(interpreter, definitions))
+                    ? then.eval(interpreter, definitions)
+                    : otherwise.eval(interpreter, definitions);
+        }
+
+        @Override
+        public Object tail(Interpreter interpreter, SContext definitions) {
+            if (!(definitions.find(IF) instanceof IfOperator)) return call.tail(interpreter, definitions);
+            return Interpreter.TRUE.equals(test.eval(interpreter, definitions))
+                    ? then.tail(interpreter, definitions)
+                    : otherwise.tail(interpreter, definitions);
+        }
+    }
+
+    record Cond(Call call, Node[] tests, Node[] values) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            if (!(definitions.find(COND) instanceof CondOperator)) return call.eval(interpreter, definitions);
+            for (int i = 0; i < tests.length; i++) {
+                if (Interpreter.TRUE.equals(tests[i].eval(interpreter, definitions))) {
+                    return values[i].eval(interpreter, definitions);
+                }
+            }
+            return new SError("no matching cond clause");
+        }
+
+        @Override
+        public Object tail(Interpreter interpreter, SContext definitions) {
+            if (!(definitions.find(COND) instanceof CondOperator)) return call.tail(interpreter, definitions);
+            for (int i = 0; i < tests.length; i++) {
+                if (Interpreter.TRUE.equals(tests[i].eval(interpreter, definitions))) {
+                    return values[i].tail(interpreter, definitions);
+                }
+            }
+            return new SError("no matching cond clause");
+        }
+    }
+
+    record AndOr(Call call, boolean and, Node[] operands) implements Node {
+        @Override
+        public SExpression eval(Interpreter interpreter, SContext definitions) {
+            var key = definitions.find(and ? AND : OR);
+            if (!(and ? key instanceof AndOperator : key instanceof OrOperator)) return call.eval(interpreter, definitions);
+            for (Node operand : operands) {
+                // and stops at the first operand that is not true, or at the first that is.
+                if (Interpreter.TRUE.equals(operand.eval(interpreter, definitions)) != and) {
+                    return and ? Interpreter.FALSE : Interpreter.TRUE;
+                }
+            }
+            return and ? Interpreter.TRUE : Interpreter.FALSE;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.tomakeitgo.lisp;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Immutable list of one expression in front of another list, which is shared rather than copied, so
+ * {@code list/prepend} and {@code list/rest} take the same time however long the list is. The rest can
+ * be any list, such as a {@link PersistentVector} or the list a form was parsed into.
+ */
+public final class ConsList extends AbstractList<SExpression> {
+    private final SExpression first;
+    private final List<SExpression> rest;
+    private final int size;
+
+    private ConsList(SExpression first, List<SExpression> rest) {
+        this.first = first;
+        this.rest = rest;
+        this.size = rest.size() + 1;
+    }
+
+    public static ConsList cons(SExpression first, List<SExpression> rest) {
+        return new ConsList(first, rest);
+    }
+
+    public SExpression first() {
+        return first;
+    }
+
+    public List<SExpression> rest() {
+        return rest;
+    }
+
+    @Override
+    public SExpression get(int index) {
+        Objects.checkIndex(index, size);
+        List<SExpression> list = this;
+        while (list instanceof ConsList cell) {
+            if (index == 0) return cell.first;
+            list = cell.rest;
+            index--;
+        }
+        return list.get(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<SExpression> iterator() {
+        return listIterator();
+    }
+
+    // Walks the cells rather than indexing from the front each time, which equals and hashCode rely on.
+    @Override
+    public ListIterator<SExpression> listIterator(int index) {
+        Objects.checkIndex(index, size + 1);
+        var iterator = new ListIterator<SExpression>() {
+            private List<SExpression> list = ConsList.this;
+            private Iterator<SExpression> remaining;
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public SExpression next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                next++;
+                if (remaining != null) return remaining.next();
+                if (list instanceof ConsList cell) {
+                    list = cell.rest;
+                    return cell.first;
+                }
+                remaining = list.iterator();
+                return remaining.next();
+            }
+
+            @Override
+            public boolean hasPrevious() {
+                return next > 0;
+            }
+
+            @Override
+            public SExpression previous() {
+                if (!hasPrevious()) throw new NoSuchElementException();
+                var previous = get(next - 1);
+                // Going back restarts the walk, which is rare enough not to be worth keeping a path for.
+                reset(next - 1);
+                return previous;
+            }
+
+            @Override
+            public int nextIndex() {
+                return next;
+            }
+
+            @Override
+            public int previousIndex() {
+                return next - 1;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void set(SExpression value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void add(SExpression value) {
+                throw new UnsupportedOperationException();
+            }
+
+            private void reset(int index) {
+                list = ConsList.this;
+                remaining = null;
+                next = 0;
+                while (next < index) {
+                    next();
+                }
+            }
+        };
+        iterator.reset(index);
+        return iterator;
+    }
+}
@@ -0,0 +1,38 @@
+package com.tomakeitgo.lisp;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list of numbers backed by an {@code int[]}. Used as the value of an {@link SExpression.SList}
+ * holding many numbers, each element is only boxed into an {@link SExpression.SNumber} when it is read.
+ */
+public class IntVector extends AbstractList<SExpression> implements RandomAccess {
+    private final int[] values;
+    private final int size;
+
+    public IntVector(int[] values) {
+        this(values, values.length);
+    }
+
+    public IntVector(int[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    @Override
+    public SExpression get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return SExpression.SNumber.of(values[index]);
+    }
+
+    public int getInt(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
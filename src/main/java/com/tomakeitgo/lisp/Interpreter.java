@@ -1,33 +1,79 @@
 package com.tomakeitgo.lisp;
 
+import com.tomakeitgo.dice.DiceProgram;
+import com.tomakeitgo.dice.RandomStreams;
 import com.tomakeitgo.lisp.SExpression.SAtom;
 import com.tomakeitgo.lisp.operators.*;
 import com.tomakeitgo.lisp.operators.control.*;
 import com.tomakeitgo.lisp.operators.dice.*;
 import com.tomakeitgo.lisp.operators.list.*;
+import com.tomakeitgo.lisp.operators.map.*;
 import com.tomakeitgo.lisp.operators.number.*;
+import com.tomakeitgo.lisp.operators.set.*;
 import com.tomakeitgo.lisp.operators.system.*;
+import com.tomakeitgo.lisp.operators.table.*;
 import com.tomakeitgo.lisp.operators.text.*;
 import com.tomakeitgo.lisp.operators.type.*;
 
+import java.io.Serial;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 import static com.tomakeitgo.lisp.SExpression.*;
 
+/**
+ * Evaluates forms against a scope of definitions. Lambda calls are metered against a {@link Budget}, so
+ * an interpreter evaluates on one thread at a time.
+ */
 public class Interpreter {
-    public static final SAtom TRUE = new SAtom("true");
-    public static final SAtom FALSE = new SAtom("false");
+    public static final SAtom TRUE = SAtom.of("true");
+    public static final SAtom FALSE = SAtom.of("false");
+
+    // Calls are counted down in chunks this long, and only when a chunk runs out are the steps left, the
+    // deadline and the thread's interrupt checked, so a call costs one decrement.
+    private static final int CHECK_INTERVAL = 1024;
+    // Far enough off to never arrive, and near enough that deadlines can be compared by subtracting.
+    private static final long FOREVER_NANOS = Long.MAX_VALUE / 2;
+
+    /**
+     * How forms are evaluated. Both give the same results; {@link #COMPILED} turns each form into a tree
+     * of {@link Compiler} nodes first, so lambda bodies are analysed once rather than on every call, and
+     * makes tail calls without growing the Java stack, so loops written as self-recursion can run for
+     * any number of iterations. A lambda called often enough is then compiled to bytecode by {@link Jit}.
+     */
+    public enum Engine {
+        TREE_WALKING,
+        COMPILED
+    }
 
     private final Path importBaseDirectory;
-    
+    private final RandomStreams random;
+    private final Engine engine;
+    // Calls left in the current chunk, the steps left after it, and the System.nanoTime to stop at.
+    private long fuel;
+    private long steps = Long.MAX_VALUE;
+    private long deadline = System.nanoTime() + FOREVER_NANOS;
+
     public Interpreter(Path importBaseDirectory){
+        this(importBaseDirectory, new RandomStreams());
+    }
+
+    public Interpreter(Path importBaseDirectory, RandomStreams random) {
+        this(importBaseDirectory, random, Engine.COMPILED);
+    }
+
+    public Interpreter(Path importBaseDirectory, RandomStreams random, Engine engine) {
         this.importBaseDirectory = importBaseDirectory;
+        this.random = random;
+        this.engine = engine;
     }
     
     public SContext createSContext() {
         SContext sContext = new SContext(null);
         sContext.register("eval", new EvalOperator());
+        sContext.register("eval/with-budget", new WithBudgetOperator());
 
         sContext.register("module", new ModuleOperator());
         sContext.register("import", new ImportOperator());
@@ -40,6 +86,20 @@ public class Interpreter {
         sContext.register("quote", new QuoteOperator());
 
         sContext.register("roll", new RollOperator());
+        sContext.register("roll/compile", new RollCompileOperator());
+        sContext.register("roll/many", new RollManyOperator());
+        sContext.register("roll/seed", new RollSeedOperator());
+        sContext.register("roll/cacheStats", new RollCacheStatsOperator());
+        sContext.register("roll/dist", new RollDistOperator());
+        sContext.register("roll/mean", new RollStatOperator("roll/mean", DiceProgram::mean));
+        sContext.register("roll/stddev", new RollStatOperator("roll/stddev", program -> program.distribution().stddev()));
+        sContext.register("roll/percentile", new RollPercentileOperator());
+        sContext.register("roll/compare", new RollCompareOperator());
+        sContext.register("roll/atLeast", new RollAtLeastOperator());
+        sContext.register("roll/simulate", new RollSimulateOperator());
+
+        sContext.register("table/define", new TableDefineOperator());
+        sContext.register("table/roll", new TableRollOperator());
 
         sContext.register("type/isList", new IsTypeOperator(SList.class));
         sContext.register("type/isText", new IsTypeOperator(SText.class));
@@ -47,6 +107,9 @@ public class Interpreter {
         sContext.register("type/isNumber", new IsTypeOperator(SNumber.class));
         sContext.register("type/isError", new IsTypeOperator(SError.class));
         sContext.register("type/isLambda", new IsTypeOperator(Lambda.class));
+        sContext.register("type/isTable", new IsTypeOperator(WeightedTable.class));
+        sContext.register("type/isMap", new IsTypeOperator(SMap.class));
+        sContext.register("type/isSet", new IsTypeOperator(SSet.class));
         
         sContext.register("text/concat", new TextConcatOperator());
         sContext.register("text/error", new ToError());
@@ -54,17 +117,17 @@ public class Interpreter {
         sContext.register("text/fromAtom", new FromAtom());
         sContext.register("text/startsWith", new TextStartsWithOperator());
         
-        sContext.register("number/lt", new BinaryNumberOperator(SNumber::lt));
-        sContext.register("number/lte", new BinaryNumberOperator(SNumber::lte));
-        sContext.register("number/gt", new BinaryNumberOperator(SNumber::gt));
-        sContext.register("number/gte", new BinaryNumberOperator(SNumber::gte));
+        sContext.register("number/lt", new BinaryNumberOperator("lt", SNumber::lt));
+        sContext.register("number/lte", new BinaryNumberOperator("lte", SNumber::lte));
+        sContext.register("number/gt", new BinaryNumberOperator("gt", SNumber::gt));
+        sContext.register("number/gte", new BinaryNumberOperator("gte", SNumber::gte));
         
-        sContext.register("number/add", new BinaryNumberOperator(SNumber::add));
-        sContext.register("number/sub", new BinaryNumberOperator(SNumber::sub));
-        sContext.register("number/mul", new BinaryNumberOperator(SNumber::mul));
-        sContext.register("number/div", new BinaryNumberOperator(SNumber::div));
-        sContext.register("number/mod", new BinaryNumberOperator(SNumber::mod));
-        sContext.register("number/divInt", new BinaryNumberOperator(SNumber::divInt));
+        sContext.register("number/add", new BinaryNumberOperator("add", SNumber::add));
+        sContext.register("number/sub", new BinaryNumberOperator("sub", SNumber::sub));
+        sContext.register("number/mul", new BinaryNumberOperator("mul", SNumber::mul));
+        sContext.register("number/div", new BinaryNumberOperator("div", SNumber::div));
+        sContext.register("number/mod", new BinaryNumberOperator("mod", SNumber::mod));
+        sContext.register("number/divInt", new BinaryNumberOperator("divInt", SNumber::divInt));
         sContext.register("number/text", new NumberToTextOperator());
 
         sContext.register("list", new ListOperator());
@@ -75,6 +138,23 @@ public class Interpreter {
         sContext.register("list/rest", new ListRestOperator());
         sContext.register("list/nth", new ListNthOperator());
         sContext.register("list/contains", new ListContainsOperator());
+
+        sContext.register("map/of", new MapOfOperator());
+        sContext.register("map/get", new MapGetOperator());
+        sContext.register("map/put", new MapPutOperator());
+        sContext.register("map/remove", new MapRemoveOperator());
+        sContext.register("map/contains", new MapContainsOperator());
+        sContext.register("map/size", new MapViewOperator("map/size", map -> SNumber.of(map.size())));
+        sContext.register("map/keys", new MapViewOperator("map/keys", map -> new SList(List.copyOf(map.keySet()))));
+        sContext.register("map/values", new MapViewOperator("map/values", map -> new SList(List.copyOf(map.values()))));
+        sContext.register("map/entries", new MapViewOperator("map/entries", MapViewOperator::entries));
+
+        sContext.register("set/of", new SetOfOperator());
+        sContext.register("set/add", new SetUpdateOperator("set/add", PersistentHashSet::with));
+        sContext.register("set/remove", new SetUpdateOperator("set/remove", PersistentHashSet::without));
+        sContext.register("set/contains", new SetContainsOperator());
+        sContext.register("set/size", new SetViewOperator("set/size", set -> SNumber.of(set.size())));
+        sContext.register("set/toList", new SetViewOperator("set/toList", set -> new SList(List.copyOf(set))));
         
         sContext.register("help", new HelpOperator());
 
@@ -84,11 +164,98 @@ public class Interpreter {
     public SExpression eval(
             SExpression expression,
             SContext definitions
+    ) {
+        if (engine == Engine.COMPILED) {
+            return Compiler.compile(expression).eval(this, definitions);
+        }
+        return walk(expression, definitions);
+    }
+
+    /**
+     * Evaluates {@code expression} within {@code budget}, and within whatever is left of the budget it is
+     * evaluated under, returning an error if either runs out or the evaluation runs out of stack.
+     * Definitions made before then are kept.
+     */
+    public SExpression eval(SExpression expression, SContext definitions, Budget budget) {
+        long outerSteps = remainingSteps();
+        long outerDeadline = deadline;
+        long allowed = Math.min(outerSteps, budget.steps());
+        long ownDeadline = System.nanoTime() + Math.min(TimeUnit.MILLISECONDS.toNanos(budget.millis()), FOREVER_NANOS);
+        steps = allowed;
+        fuel = 0;
+        deadline = ownDeadline - outerDeadline < 0 ? ownDeadline : outerDeadline;
+        try {
+            return eval(expression, definitions);
+        } catch (BudgetExhausted e) {
+            return new SError(e.getMessage());
+        } catch (StackOverflowError e) {
+            // Recursion deeper than the thread's stack exhausts the budget as surely as running out of steps.
+            return new SError("Evaluation ran out of stack");
+        } finally {
+            // Charged to the outer budget, which stops at its next check if this used it all.
+            steps = outerSteps - (allowed - remainingSteps());
+            fuel = 0;
+            deadline = outerDeadline;
+        }
+    }
+
+    /**
+     * Counts a lambda call against the budget, stopping the evaluation if it has run out or the thread
+     * has been interrupted.
+     */
+    void step() {
+        if (--fuel < 0) {
+            refuel();
+        }
+    }
+
+    /**
+     * Stops the evaluation if the thread has been interrupted or the time budget has run out. Operators
+     * that can run for a long time without calling a lambda call this every so often, so they can be
+     * cancelled too.
+     */
+    public void checkpoint() {
+        if (Thread.interrupted()) {
+            throw new CancellationException("Evaluation cancelled");
+        }
+        if (System.nanoTime() - deadline > 0) {
+            throw new BudgetExhausted("Evaluation ran out of time");
+        }
+    }
+
+    private void refuel() {
+        checkpoint();
+        if (steps <= 0) {
+            throw new BudgetExhausted("Evaluation ran out of steps");
+        }
+        long chunk = Math.min(steps, CHECK_INTERVAL);
+        steps -= chunk;
+        fuel = chunk - 1;
+    }
+
+    private long remainingSteps() {
+        return steps + Math.max(fuel, 0);
+    }
+
+    private static final class BudgetExhausted extends RuntimeException {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        BudgetExhausted(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private SExpression walk(
+            SExpression expression,
+            SContext definitions
     ) {
         return switch (expression) {
             case SError e -> e;
             case SNumber t -> t;
             case SText t -> t;
+            case SMap m -> m;
+            case SSet s -> s;
             case Operator o -> o;
             case SAtom t -> definitions.find(t);
             case SList l -> {
@@ -98,10 +265,10 @@ public class Interpreter {
                 var rest = list.subList(1, list.size());
                 var key = definitions.find(list.getFirst());
 
-                if (key.equals(new SAtom("def"))) {
+                if (key.equals(Compiler.DEF)) {
                     definitions.set(rest.get(0), eval(rest.get(1), definitions));
                     yield rest.get(0);
-                } else if (key.equals(new SAtom("lambda"))) {
+                } else if (key.equals(Compiler.LAMBDA)) {
                     yield new Lambda(rest, definitions);
                 } else if (key instanceof SList keyList) {
                     key = eval(keyList, definitions);
@@ -114,6 +281,8 @@ public class Interpreter {
                     yield andOperator.eval(rest, this, definitions);
                 } else if (key instanceof OrOperator orOperator) {
                     yield orOperator.eval(rest, this, definitions);
+                } else if (key instanceof WithBudgetOperator withBudgetOperator) {
+                    yield withBudgetOperator.eval(rest, this, definitions);
                 } else if (key instanceof Operator operator) {
                     List<SExpression> args = rest.stream().map(i -> eval(i, definitions)).toList();
                     yield operator.eval(args, this, definitions);
@@ -127,4 +296,12 @@ public class Interpreter {
     public Path getImportBaseDirectory() {
         return importBaseDirectory;
     }
+
+    public RandomStreams getRandom() {
+        return random;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
 }
@@ -0,0 +1,495 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.Compiler.*;
+import com.tomakeitgo.lisp.SExpression.*;
+import com.tomakeitgo.lisp.operators.IsEqualOperator;
+import com.tomakeitgo.lisp.operators.control.AndOperator;
+import com.tomakeitgo.lisp.operators.control.CondOperator;
+import com.tomakeitgo.lisp.operators.control.IfOperator;
+import com.tomakeitgo.lisp.operators.control.OrOperator;
+import com.tomakeitgo.lisp.operators.control.WithBudgetOperator;
+import com.tomakeitgo.lisp.operators.number.BinaryNumberOperator;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.SwitchPoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static com.tomakeitgo.lisp.BytecodeWriter.*;
+
+/**
+ * The second tier of the compiled engine. A compiled lambda counts its calls, and at {@link #THRESHOLD}
+ * its body is compiled again, to the method of a hidden class defined with
+ * {@link MethodHandles.Lookup#defineHiddenClass}, which the JVM then compiles like any other code.
+ * <p>
+ * The method reads the lambda's parameters into JVM locals. A call through a name bound in the root scope
+ * is made to whatever the name was bound to when the body was compiled: {@code if}, {@code cond},
+ * {@code and} and {@code or} become branches, two numbers given to a {@link BinaryNumberOperator} go
+ * straight to its {@link SNumber} method, {@code isEqual} of two values to {@link IsEqualOperator#isEqual},
+ * and any other operator is called without looking its name up. Forms the method does not compile itself,
+ * such as {@code def}, {@code lambda} and calls through a parameter, are evaluated by their nodes.
+ * <p>
+ * Each of those names is guarded by the root scope's {@link SwitchPoint} for it, which is invalidated
+ * when the name is bound to something else. A form whose guard has been invalidated is evaluated by its
+ * node instead, and the lambda goes back to its nodes and counts its calls again, so it is compiled
+ * against the new definitions. A lambda that has gone back {@link #MAX_DEOPTIMIZATIONS} times, such as
+ * one that redefines a name it calls, stays with its nodes.
+ */
+final class Jit {
+    /**
+     * Calls to a lambda before its body is compiled.
+     */
+    static final int THRESHOLD = 1000;
+
+    /**
+     * Times a lambda's compiled body can be dropped before it is no longer compiled.
+     */
+    static final int MAX_DEOPTIMIZATIONS = 4;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final String NAME = "com/tomakeitgo/lisp/JitBody";
+    private static final String BODY = "com/tomakeitgo/lisp/Jit$Body";
+    private static final String JIT = "com/tomakeitgo/lisp/Jit";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String EXPRESSION = "com/tomakeitgo/lisp/SExpression";
+    private static final String NUMBER = "com/tomakeitgo/lisp/SExpression$SNumber";
+    private static final String ATOM = "com/tomakeitgo/lisp/SExpression$SAtom";
+    private static final String CONTEXT = "com/tomakeitgo/lisp/SContext";
+    private static final String INTERPRETER = "com/tomakeitgo/lisp/Interpreter";
+    private static final String SWITCH_POINT = "java/lang/invoke/SwitchPoint";
+    private static final String BINARY = "com/tomakeitgo/lisp/operators/number/BinaryNumberOperator";
+    private static final String IS_EQUAL = "com/tomakeitgo/lisp/operators/IsEqualOperator";
+
+    private static final String E = "L" + EXPRESSION + ";";
+    private static final String RUN = "(L" + INTERPRETER + ";L" + CONTEXT + ";)L" + OBJECT + ";";
+    private static final String NODE_HELPER = "(L" + BODY + ";[L" + OBJECT + ";IL" + INTERPRETER + ";L" + CONTEXT + ";)";
+    private static final String CALL_HELPER = "(L" + OBJECT + ";[" + E + "L" + INTERPRETER + ";L" + CONTEXT + ";)";
+
+    // The locals of the method: this, its two parameters, the constants, the frame's slots, then the
+    // lambda's parameters and the values of the forms in the body.
+    private static final int THIS = 0;
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int FRAME = 2;
+    private static final int CONSTANTS = 3;
+    private static final int SLOTS = 4;
+    private static final int FIRST_PARAMETER = 5;
+    private static final int MAX_LOCALS = 256;
+    // Nothing the generator writes needs more: the deepest is an argument array being filled in.
+    private static final int MAX_STACK = 8;
+
+    private static final SError NO_MATCH = new SError("no matching cond clause");
+
+    private Jit() {
+    }
+
+    /**
+     * A compiled lambda body. {@link #run} evaluates the body in {@code frame}, the lambda's call frame,
+     * and returns what the last statement of its nodes would: a value, or a {@link TailCall}.
+     */
+    interface Body {
+        Object run(Interpreter interpreter, SContext frame);
+    }
+
+    /**
+     * The body of {@code lambda}, whose nodes are {@code body}, compiled against the definitions seen from
+     * {@code closure}; or null if it is too big to compile.
+     */
+    static Body compile(Lambda lambda, Node[] body, int parameters, SContext closure) {
+        try {
+            // The first pass finds how many locals the method needs, since the second sets them all
+            // before any branch.
+            int locals = new Generator(lambda, parameters, closure, FIRST_PARAMETER).generate(body).locals;
+            var generator = new Generator(lambda, parameters, closure, locals);
+            byte[] bytes = generator.generate(body).code.toByteArray(BODY, "run", RUN, MAX_STACK, generator.localTypes());
+            var type = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return (Body) type.getConstructor(Object[].class).newInstance((Object) generator.constants.toArray());
+        } catch (IllegalStateException e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load the compiled body of " + lambda, e);
+        }
+    }
+
+    // The helpers the compiled code calls. Those for nodes all take the body, though only deoptimizing needs it.
+
+    static SExpression eval(Body body, Object[] constants, int node, Interpreter interpreter, SContext frame) {
+        return ((Node) constants[node]).eval(interpreter, frame);
+    }
+
+    static Object tail(Body body, Object[] constants, int node, Interpreter interpreter, SContext frame) {
+        return ((Node) constants[node]).tail(interpreter, frame);
+    }
+
+    static SExpression deoptimize(Body body, Object[] constants, int node, Interpreter interpreter, SContext frame) {
+        ((Lambda) constants[0]).deoptimize(body);
+        return eval(body, constants, node, interpreter, frame);
+    }
+
+    static Object deoptimizeTail(Body body, Object[] constants, int node, Interpreter interpreter, SContext frame) {
+        ((Lambda) constants[0]).deoptimize(body);
+        return tail(body, constants, node, interpreter, frame);
+    }
+
+    static SExpression call(Object operator, SExpression[] arguments, Interpreter interpreter, SContext frame) {
+        return ((Operator) operator).eval(Arrays.asList(arguments), interpreter, frame);
+    }
+
+    static Object tailCall(Object lambda, SExpression[] arguments, Interpreter interpreter, SContext frame) {
+        return new TailCall((Lambda) lambda, Arrays.asList(arguments));
+    }
+
+    private static final class Generator {
+        private final int parameters;
+        private final SContext closure;
+        private final int initialised;
+        private final BytecodeWriter code = new BytecodeWriter(NAME);
+        private final List<Object> constants = new ArrayList<>();
+        private final IdentityHashMap<Object, Integer> indexes = new IdentityHashMap<>();
+        private int locals;
+
+        // The method sets the locals below initialised to null before anything else.
+        Generator(Lambda lambda, int parameters, SContext closure, int initialised) {
+            this.parameters = parameters;
+            this.closure = closure;
+            this.initialised = initialised;
+            this.locals = FIRST_PARAMETER + parameters;
+            if (locals > MAX_LOCALS) {
+                throw new IllegalStateException("The lambda has too many parameters to compile");
+            }
+            // The helpers find the lambda first among the constants.
+            constants.add(lambda);
+            indexes.put(lambda, 0);
+        }
+
+        Generator generate(Node[] body) {
+            code.aload(THIS);
+            code.field(GETFIELD, NAME, "k", "[L" + OBJECT + ";");
+            code.astore(CONSTANTS);
+            code.aload(FRAME);
+            code.invoke(INVOKEVIRTUAL, CONTEXT, "slots", "()[" + E);
+            code.astore(SLOTS);
+            reload();
+            for (int local = FIRST_PARAMETER + parameters; local < initialised; local++) {
+                code.op(ACONST_NULL);
+                code.astore(local);
+            }
+
+            for (int i = 0; i < body.length - 1; i++) {
+                value(body[i], temporary());
+            }
+            tail(body[body.length - 1]);
+            return this;
+        }
+
+        String[] localTypes() {
+            var types = new String[locals];
+            Arrays.fill(types, OBJECT);
+            types[THIS] = BODY;
+            types[INTERPRETER_LOCAL] = INTERPRETER;
+            types[FRAME] = CONTEXT;
+            types[CONSTANTS] = "[L" + OBJECT + ";";
+            types[SLOTS] = "[" + E;
+            return types;
+        }
+
+        // Stores the value of node in local target.
+        private void value(Node node, int target) {
+            switch (node) {
+                case Constant constant -> {
+                    constant(constant.value());
+                    code.astore(target);
+                }
+                case Local local when local.depth() == 0 -> {
+                    code.aload(FIRST_PARAMETER + local.slot());
+                    code.astore(target);
+                }
+                case Local local -> {
+                    code.aload(FRAME);
+                    code.push(local.depth());
+                    code.push(local.slot());
+                    code.invoke(INVOKEVIRTUAL, CONTEXT, "slot", "(II)" + E);
+                    code.astore(target);
+                }
+                case Variable variable -> {
+                    code.aload(FRAME);
+                    constant(variable.name());
+                    code.invoke(INVOKEVIRTUAL, CONTEXT, "find", "(" + E + ")" + E);
+                    code.astore(target);
+                }
+                default -> form(node, target, false);
+            }
+        }
+
+        // Returns the value of node, or the tail call it ends with, from the method.
+        private void tail(Node node) {
+            if (node instanceof Constant || node instanceof Local || node instanceof Variable) {
+                int value = temporary();
+                value(node, value);
+                code.aload(value);
+                code.op(ARETURN);
+            } else {
+                form(node, -1, true);
+            }
+        }
+
+        private void form(Node node, int target, boolean tail) {
+            switch (node) {
+                case If form when closure.global(Compiler.IF) instanceof IfOperator -> branch(form, target, tail);
+                case Cond form when closure.global(Compiler.COND) instanceof CondOperator -> cond(form, target, tail);
+                case AndOr form when form.and() ? closure.global(Compiler.AND) instanceof AndOperator
+                        : closure.global(Compiler.OR) instanceof OrOperator -> andOr(form, target, tail);
+                case Call call -> call(call, target, tail);
+                default -> node(node, target, tail, "eval", "tail");
+            }
+        }
+
+        private void branch(If form, int target, boolean tail) {
+            var redefined = new Label();
+            var otherwise = new Label();
+            var end = new Label();
+            guard(Compiler.IF, redefined);
+            test(form.test());
+            code.jump(IFEQ, otherwise);
+            emit(form.then(), target, tail, end);
+            code.bind(otherwise);
+            emit(form.otherwise(), target, tail, end);
+            redefined(form, target, tail, redefined, end);
+        }
+
+        private void cond(Cond form, int target, boolean tail) {
+            var redefined = new Label();
+            var end = new Label();
+            guard(Compiler.COND, redefined);
+            for (int i = 0; i < form.tests().length; i++) {
+                var next = new Label();
+                test(form.tests()[i]);
+                code.jump(IFEQ, next);
+                emit(form.values()[i], target, tail, end);
+                code.bind(next);
+            }
+            constant(NO_MATCH);
+            store(target, tail, end);
+            redefined(form, target, tail, redefined, end);
+        }
+
+        private void andOr(AndOr form, int target, boolean tail) {
+            var redefined = new Label();
+            var decided = new Label();
+            var end = new Label();
+            guard(form.and() ? Compiler.AND : Compiler.OR, redefined);
+            for (Node operand : form.operands()) {
+                // and stops at the first operand that is not true, or at the first that is.
+                test(operand);
+                code.jump(form.and() ? IFEQ : IFNE, decided);
+            }
+            bool(form.and());
+            store(target, tail, end);
+            code.bind(decided);
+            bool(!form.and());
+            store(target, tail, end);
+            redefined(form, target, tail, redefined, end);
+        }
+
+        private void call(Call call, int target, boolean tail) {
+            var value = call.head instanceof SAtom name && call.headNode instanceof Variable ? closure.global(name) : null;
+            if (!(value instanceof Operator operator) || value instanceof IfOperator || value instanceof CondOperator
+                    || value instanceof AndOperator || value instanceof OrOperator || value instanceof WithBudgetOperator) {
+                // A head that is not an operator leaves the form as it is, which is left to the node along
+                // with special forms given the wrong arguments, names that are not globals, and def and lambda.
+                node(call, target, tail, "eval", "tail");
+                return;
+            }
+            var redefined = new Label();
+            var end = new Label();
+            guard((SAtom) call.head, redefined);
+            var arguments = call.arguments();
+            if (operator instanceof BinaryNumberOperator binary && arguments.length == 2) {
+                number(binary, arguments, target, tail, end);
+            } else if (operator instanceof IsEqualOperator && arguments.length == 2) {
+                int first = temporary();
+                int second = temporary();
+                value(arguments[0], first);
+                value(arguments[1], second);
+                code.aload(first);
+                code.aload(second);
+                code.invoke(INVOKESTATIC, IS_EQUAL, "isEqual", "(" + E + E + ")" + E);
+                store(target, tail, end);
+            } else {
+                var values = new int[arguments.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = temporary();
+                    value(arguments[i], values[i]);
+                }
+                constant(operator);
+                code.push(values.length);
+                code.type(ANEWARRAY, EXPRESSION);
+                for (int i = 0; i < values.length; i++) {
+                    code.op(DUP);
+                    code.push(i);
+                    code.aload(values[i]);
+                    code.op(AASTORE);
+                }
+                code.aload(INTERPRETER_LOCAL);
+                code.aload(FRAME);
+                if (tail && operator instanceof Lambda lambda && lambda.isCompiled()) {
+                    code.invoke(INVOKESTATIC, JIT, "tailCall", CALL_HELPER + "L" + OBJECT + ";");
+                    code.op(ARETURN);
+                } else {
+                    code.invoke(INVOKESTATIC, JIT, "call", CALL_HELPER + E);
+                    if (tail) {
+                        code.op(ARETURN);
+                    } else {
+                        code.astore(target);
+                        reload();
+                        code.jump(GOTO, end);
+                    }
+                }
+            }
+            redefined(call, target, tail, redefined, end);
+        }
+
+        private void number(BinaryNumberOperator binary, Node[] arguments, int target, boolean tail, Label end) {
+            int first = temporary();
+            int second = temporary();
+            value(arguments[0], first);
+            value(arguments[1], second);
+            var descriptor = numberMethod(binary.method());
+            if (descriptor != null) {
+                var other = new Label();
+                code.aload(first);
+                code.type(INSTANCEOF, NUMBER);
+                code.jump(IFEQ, other);
+                code.aload(second);
+                code.type(INSTANCEOF, NUMBER);
+                code.jump(IFEQ, other);
+                code.aload(first);
+                code.type(CHECKCAST, NUMBER);
+                code.aload(second);
+                code.type(CHECKCAST, NUMBER);
+                code.invoke(INVOKEVIRTUAL, NUMBER, binary.method(), descriptor);
+                store(target, tail, end);
+                code.bind(other);
+            }
+            // Anything else gets the operator's own result, an error for what is not a number.
+            constant(binary);
+            code.type(CHECKCAST, BINARY);
+            code.aload(first);
+            code.aload(second);
+            code.invoke(INVOKEVIRTUAL, BINARY, "apply", "(" + E + E + ")" + E);
+            store(target, tail, end);
+        }
+
+        // The descriptor of the SNumber method named method, or null if there is none to call directly.
+        private static String numberMethod(String method) {
+            if (method == null) return null;
+            try {
+                var returned = SNumber.class.getMethod(method, SNumber.class).getReturnType();
+                return "(L" + NUMBER + ";)L" + returned.getName().replace('.', '/') + ";";
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        // Leaves whether the value of node is true on the stack.
+        private void test(Node node) {
+            int value = temporary();
+            value(node, value);
+            code.field(GETSTATIC, INTERPRETER, "TRUE", "L" + ATOM + ";");
+            code.aload(value);
+            code.invoke(INVOKEVIRTUAL, ATOM, "equals", "(L" + OBJECT + ";)Z");
+        }
+
+        private void bool(boolean value) {
+            code.field(GETSTATIC, INTERPRETER, value ? "TRUE" : "FALSE", "L" + ATOM + ";");
+        }
+
+        private void emit(Node node, int target, boolean tail, Label end) {
+            if (tail) {
+                tail(node);
+            } else {
+                value(node, target);
+                code.jump(GOTO, end);
+            }
+        }
+
+        // Stores or returns the value on the stack.
+        private void store(int target, boolean tail, Label end) {
+            if (tail) {
+                code.op(ARETURN);
+            } else {
+                code.astore(target);
+                code.jump(GOTO, end);
+            }
+        }
+
+        // Jumps to redefined if the definition of name the code assumes has been replaced.
+        private void guard(SAtom name, Label redefined) {
+            constant(closure.guard(name));
+            code.type(CHECKCAST, SWITCH_POINT);
+            code.invoke(INVOKEVIRTUAL, SWITCH_POINT, "hasBeenInvalidated", "()Z");
+            code.jump(IFNE, redefined);
+        }
+
+        // What a form whose guard failed does instead: its node evaluates it, and the lambda goes back to
+        // its nodes. The form's code ends there.
+        private void redefined(Node node, int target, boolean tail, Label redefined, Label end) {
+            code.bind(redefined);
+            node(node, target, tail, "deoptimize", "deoptimizeTail");
+            if (!tail) {
+                code.bind(end);
+            }
+        }
+
+        private void node(Node node, int target, boolean tail, String eval, String evalTail) {
+            code.aload(THIS);
+            code.aload(CONSTANTS);
+            constantIndex(node);
+            code.aload(INTERPRETER_LOCAL);
+            code.aload(FRAME);
+            if (tail) {
+                code.invoke(INVOKESTATIC, JIT, evalTail, NODE_HELPER + "L" + OBJECT + ";");
+                code.op(ARETURN);
+            } else {
+                code.invoke(INVOKESTATIC, JIT, eval, NODE_HELPER + E);
+                code.astore(target);
+                reload();
+            }
+        }
+
+        // Reads the parameters from the frame again, since code the method calls can reassign them.
+        private void reload() {
+            for (int slot = 0; slot < parameters; slot++) {
+                code.aload(SLOTS);
+                code.push(slot);
+                code.op(AALOAD);
+                code.astore(FIRST_PARAMETER + slot);
+            }
+        }
+
+        private void constant(Object value) {
+            code.aload(CONSTANTS);
+            constantIndex(value);
+            code.op(AALOAD);
+        }
+
+        private void constantIndex(Object value) {
+            var index = indexes.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                indexes.put(value, index);
+            }
+            code.push(index);
+        }
+
+        private int temporary() {
+            if (locals == MAX_LOCALS) {
+                throw new IllegalStateException("The body needs too many locals to compile");
+            }
+            return locals++;
+        }
+    }
+}
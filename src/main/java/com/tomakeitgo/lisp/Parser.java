@@ -27,7 +27,7 @@ public class Parser {
         if (toProcess.isEmpty()) return null;
         var item = toProcess.pop();
         if (item.getType().equals(Lexer.Token.Type.ATOM)) {
-            return new SExpression.SAtom(item.getValue());
+            return SExpression.SAtom.of(item.getValue());
         } else if (item.getType().equals(Lexer.Token.Type.NUMBER)) {
             return SExpression.SNumber.from(item.getValue());
         } else if (item.getType().equals(Lexer.Token.Type.STRING)) {
@@ -0,0 +1,305 @@
+package com.tomakeitgo.lisp;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable map of expressions that updates by sharing structure: a hash array mapped trie. Each node
+ * covers five bits of the key's hash and keeps a 32-bit bitmap of which of its 32 branches are used,
+ * storing only those, so a lookup reads at most one node per five bits and adding or removing a key
+ * copies only the nodes on its path. Keys whose whole hashes are equal share a collision node.
+ */
+public final class PersistentHashMap extends AbstractMap<SExpression, SExpression> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    public static final PersistentHashMap EMPTY = new PersistentHashMap(0, null);
+
+    private final int count;
+    // Null when the map is empty.
+    private final Node root;
+    // Zero until first computed, which a map used as a key of another map needs every lookup.
+    private int hash;
+
+    private PersistentHashMap(int count, Node root) {
+        this.count = count;
+        this.root = root;
+    }
+
+    /**
+     * This map with {@code key} mapped to {@code value}, or this map itself if it already is.
+     */
+    public PersistentHashMap with(SExpression key, SExpression value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        var added = new boolean[1];
+        var node = (root == null ? BitmapNode.EMPTY : root).with(0, hash(key), key, value, added);
+        if (node == root) return this;
+        return new PersistentHashMap(added[0] ? count + 1 : count, node);
+    }
+
+    /**
+     * This map without {@code key}, or this map itself if it has no such key.
+     */
+    public PersistentHashMap without(SExpression key) {
+        if (root == null) return this;
+        var node = root.without(0, hash(key), key);
+        if (node == root) return this;
+        return node == null ? EMPTY : new PersistentHashMap(count - 1, node);
+    }
+
+    @Override
+    public SExpression get(Object key) {
+        return root == null || key == null ? null : root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public Set<Entry<SExpression, SExpression>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<SExpression, SExpression>> iterator() {
+                return new EntryIterator(root);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = super.hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o instanceof PersistentHashMap map && (count != map.count || hashCode() != map.hashCode())) return false;
+        return super.equals(o);
+    }
+
+    // Spreads the high bits down, since the first levels only look at the low ones.
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int branch(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private sealed interface Node permits BitmapNode, CollisionNode {
+        SExpression find(int shift, int hash, Object key);
+
+        Node with(int shift, int hash, SExpression key, SExpression value, boolean[] added);
+
+        // The node without key, this node if it has no such key, or null if key was all it held.
+        Node without(int shift, int hash, Object key);
+
+        // Keys and values in pairs, or a null key and a child node.
+        Object[] array();
+    }
+
+    private record BitmapNode(int bitmap, Object[] array) implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        @Override
+        public SExpression find(int shift, int hash, Object key) {
+            int bit = branch(hash, shift);
+            if ((bitmap & bit) == 0) return null;
+            int i = index(bit);
+            var k = array[2 * i];
+            if (k == null) return ((Node) array[2 * i + 1]).find(shift + BITS, hash, key);
+            return key.equals(k) ? (SExpression) array[2 * i + 1] : null;
+        }
+
+        @Override
+        public Node with(int shift, int hash, SExpression key, SExpression value, boolean[] added) {
+            int bit = branch(hash, shift);
+            int i = index(bit);
+            if ((bitmap & bit) == 0) {
+                var copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, 2 * i);
+                copy[2 * i] = key;
+                copy[2 * i + 1] = value;
+                System.arraycopy(array, 2 * i, copy, 2 * i + 2, array.length - 2 * i);
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, copy);
+            }
+
+            var k = array[2 * i];
+            var v = array[2 * i + 1];
+            if (k == null) {
+                var child = ((Node) v).with(shift + BITS, hash, key, value, added);
+                return child == v ? this : replace(i, null, child);
+            }
+            if (key.equals(k)) {
+                return value.equals(v) ? this : replace(i, k, value);
+            }
+            added[0] = true;
+            return replace(i, null, pair(shift + BITS, (SExpression) k, (SExpression) v, hash, key, value));
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int bit = branch(hash, shift);
+            if ((bitmap & bit) == 0) return this;
+            int i = index(bit);
+            var k = array[2 * i];
+            if (k == null) {
+                var child = (Node) array[2 * i + 1];
+                var smaller = child.without(shift + BITS, hash, key);
+                if (smaller == child) return this;
+                if (smaller != null) return replace(i, null, smaller);
+            } else if (!key.equals(k)) {
+                return this;
+            }
+            if (bitmap == bit) return null;
+            var copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, 2 * i);
+            System.arraycopy(array, 2 * i + 2, copy, 2 * i, copy.length - 2 * i);
+            return new BitmapNode(bitmap ^ bit, copy);
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        private BitmapNode replace(int i, Object key, Object value) {
+            var copy = array.clone();
+            copy[2 * i] = key;
+            copy[2 * i + 1] = value;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        // A node holding two keys that share the branches above shift.
+        private static Node pair(int shift, SExpression key1, SExpression value1, int hash2, SExpression key2, SExpression value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            var ignored = new boolean[1];
+            return BitmapNode.EMPTY
+                    .with(shift, hash1, key1, value1, ignored)
+                    .with(shift, hash2, key2, value2, ignored);
+        }
+    }
+
+    private record CollisionNode(int hash, Object[] array) implements Node {
+        @Override
+        public SExpression find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : (SExpression) array[i + 1];
+        }
+
+        @Override
+        public Node with(int shift, int hash, SExpression key, SExpression value, boolean[] added) {
+            if (hash != this.hash) {
+                // A different hash splits off here, so this node moves down a level under a bitmap node.
+                return new BitmapNode(branch(this.hash, shift), new Object[]{null, this})
+                        .with(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                if (value.equals(array[i + 1])) return this;
+                var copy = array.clone();
+                copy[i + 1] = value;
+                return new CollisionNode(hash, copy);
+            }
+            var copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public Node without(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) return this;
+            if (array.length == 2) return null;
+            var copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, copy.length - i);
+            return new CollisionNode(hash, copy);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) return i;
+            }
+            return -1;
+        }
+    }
+
+    // Walks the trie depth first, keeping the array and position of each node on the path.
+    private static final class EntryIterator implements Iterator<Entry<SExpression, SExpression>> {
+        // Seven bitmap levels cover the 32 hash bits, and a collision node can sit below the last.
+        private final Object[][] arrays = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = -1;
+        private Entry<SExpression, SExpression> next;
+
+        EntryIterator(Node root) {
+            if (root != null) {
+                arrays[++depth] = root.array();
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<SExpression, SExpression> next() {
+            if (next == null) throw new NoSuchElementException();
+            var entry = next;
+            advance();
+            return entry;
+        }
+
+        private void advance() {
+            while (depth >= 0) {
+                var array = arrays[depth];
+                int i = positions[depth];
+                if (i == array.length) {
+                    positions[depth--] = 0;
+                    continue;
+                }
+                positions[depth] = i + 2;
+                if (array[i] == null) {
+                    arrays[++depth] = ((Node) array[i + 1]).array();
+                } else {
+                    next = Map.entry((SExpression) array[i], (SExpression) array[i + 1]);
+                    return;
+                }
+            }
+            next = null;
+        }
+    }
+}
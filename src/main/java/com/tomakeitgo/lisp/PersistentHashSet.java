@@ -0,0 +1,61 @@
+package com.tomakeitgo.lisp;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+
+/**
+ * Immutable set of expressions that updates by sharing structure, held as a {@link PersistentHashMap}
+ * from each element to itself.
+ */
+public final class PersistentHashSet extends AbstractSet<SExpression> {
+    public static final PersistentHashSet EMPTY = new PersistentHashSet(PersistentHashMap.EMPTY);
+
+    private final PersistentHashMap elements;
+    // Zero until first computed, as for the map.
+    private int hash;
+
+    private PersistentHashSet(PersistentHashMap elements) {
+        this.elements = elements;
+    }
+
+    /**
+     * This set with {@code element} added, or this set itself if it already has it.
+     */
+    public PersistentHashSet with(SExpression element) {
+        var added = elements.with(element, element);
+        return added == elements ? this : new PersistentHashSet(added);
+    }
+
+    /**
+     * This set without {@code element}, or this set itself if it does not have it.
+     */
+    public PersistentHashSet without(SExpression element) {
+        var removed = elements.without(element);
+        return removed == elements ? this : new PersistentHashSet(removed);
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return elements.containsKey(element);
+    }
+
+    @Override
+    public Iterator<SExpression> iterator() {
+        return elements.keySet().iterator();
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = super.hashCode();
+            hash = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,132 @@
+package com.tomakeitgo.lisp;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list of expressions that appends by sharing structure. Elements live in a tree of 32-wide
+ * arrays indexed by the bits of their position, five at a time, with the last up to 32 in a separate
+ * tail, so appending copies at most the tail and one path down the tree, and reading is a few array
+ * loads. Dropping from the front only moves the start, which is what {@code list/rest} needs.
+ */
+public final class PersistentVector extends AbstractList<SExpression> implements RandomAccess {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    public static final PersistentVector EMPTY = new PersistentVector(0, 0, BITS, new Object[WIDTH], new Object[0]);
+
+    // Positions before start have been dropped; count is one past the last position.
+    private final int start;
+    private final int count;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int start, int count, int shift, Object[] root, Object[] tail) {
+        this.start = start;
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    /**
+     * A vector of {@code values}, or {@code values} itself if it already is one.
+     */
+    public static PersistentVector of(List<SExpression> values) {
+        if (values instanceof PersistentVector vector) return vector;
+
+        int size = values.size();
+        int tailLength = size == 0 ? 0 : ((size - 1) & MASK) + 1;
+        Object[] nodes = new Object[(size - tailLength) / WIDTH];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = values.subList(i * WIDTH, (i + 1) * WIDTH).toArray();
+        }
+        int shift = BITS;
+        while (nodes.length > WIDTH) {
+            var parents = new Object[(nodes.length + MASK) / WIDTH];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = Arrays.copyOfRange(nodes, i * WIDTH, (i + 1) * WIDTH);
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        return new PersistentVector(0, size, shift, Arrays.copyOf(nodes, WIDTH), values.subList(size - tailLength, size).toArray());
+    }
+
+    public PersistentVector append(SExpression value) {
+        if (tail.length < WIDTH) {
+            var newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = value;
+            return new PersistentVector(start, count + 1, shift, root, newTail);
+        }
+
+        // The tail is full: it becomes a leaf of the tree, growing the tree a level if the root is full.
+        if ((count >>> BITS) > (1 << shift)) {
+            var newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = path(shift, tail);
+            return new PersistentVector(start, count + 1, shift + BITS, newRoot, new Object[]{value});
+        }
+        return new PersistentVector(start, count + 1, shift, pushTail(shift, root), new Object[]{value});
+    }
+
+    public PersistentVector appendAll(List<SExpression> values) {
+        var result = this;
+        for (SExpression value : values) {
+            result = result.append(value);
+        }
+        return result;
+    }
+
+    /**
+     * This vector without its first {@code n} elements.
+     */
+    public PersistentVector drop(int n) {
+        Objects.checkIndex(n, size() + 1);
+        return new PersistentVector(start + n, count, shift, root, tail);
+    }
+
+    @Override
+    public SExpression get(int index) {
+        Objects.checkIndex(index, size());
+        int position = start + index;
+        int tailOffset = count - tail.length;
+        if (position >= tailOffset) {
+            return (SExpression) tail[position - tailOffset];
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(position >>> level) & MASK];
+        }
+        return (SExpression) node[position & MASK];
+    }
+
+    @Override
+    public int size() {
+        return count - start;
+    }
+
+    private Object[] pushTail(int level, Object[] parent) {
+        int index = ((count - 1) >>> level) & MASK;
+        var copy = parent.clone();
+        if (level == BITS) {
+            copy[index] = tail;
+        } else {
+            var child = (Object[]) parent[index];
+            copy[index] = child != null ? pushTail(level - BITS, child) : path(level - BITS, tail);
+        }
+        return copy;
+    }
+
+    private static Object[] path(int level, Object[] leaf) {
+        if (level == 0) return leaf;
+        var node = new Object[WIDTH];
+        node[0] = path(level - BITS, leaf);
+        return node;
+    }
+}
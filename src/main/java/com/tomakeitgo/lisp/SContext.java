@@ -1,54 +1,191 @@
 package com.tomakeitgo.lisp;
 
+import com.tomakeitgo.lisp.SExpression.SAtom;
+
+import java.lang.invoke.SwitchPoint;
+import java.util.Arrays;
 import java.util.HashMap;
 
+/**
+ * A scope of definitions, chained to the scope it was created in.
+ * <p>
+ * A lambda call frame binds its parameters positionally: {@code names[i]} is bound to {@code slots[i]},
+ * so compiled code can read a parameter by its lexical address (how many frames out, which slot)
+ * without looking the name up. Anything else goes in the root scope's table indexed by
+ * {@link SAtom#id()}, where the builtins and top-level {@code def}s live, or in a map in any other scope,
+ * such as a {@code def} of a new name inside a lambda body. A table the size of every name ever seen is
+ * only worth having once, so other scopes, and definitions whose name is not an atom, use the map. Both
+ * are only allocated when first needed.
+ * <p>
+ * Code compiled by {@link Jit} assumes what some names in the root scope are bound to. The root scope
+ * keeps a {@link SwitchPoint} for each of those names, and invalidates it when the name is bound to
+ * something else there or bound in any other scope, where it would hide the root scope's binding.
+ */
 public class SContext {
+    private static final SExpression[] NONE = new SExpression[0];
+
     private final SContext parent;
-    private final HashMap<SExpression, SExpression> values = new HashMap<>();
+    private final SExpression[] names;
+    private final SExpression[] slots;
+    private SExpression[] atoms;
+    private HashMap<SExpression, SExpression> values;
+    // In the root scope, the switch points compiled code holds for names, indexed by SAtom.id().
+    private SwitchPoint[] guards;
 
     public SContext(SContext parent) {
         this.parent = parent;
+        this.names = NONE;
+        this.slots = NONE;
     }
 
-    public void register(String atom, SExpression definition) {
-        this.values.put(new SExpression.SAtom(atom), definition);
+    /**
+     * A lambda call frame binding each of {@code names} to the value at the same index of {@code slots}.
+     */
+    SContext(SContext parent, SExpression[] names, SExpression[] slots) {
+        this.parent = parent;
+        this.names = names;
+        this.slots = slots;
     }
 
-    public void register(SExpression expression, SExpression definition) {
-        this.values.put(expression, definition);
+    public void register(String atom, SExpression definition) {
+        register(SAtom.of(atom), definition);
     }
 
-    private SContext findContextContainingKey(SExpression expression) {
-        if (values.containsKey(expression)) {
-            return this;
-        } else if (parent == null) {
-            return null;
+    public void register(SExpression expression, SExpression definition) {
+        int slot = slotOf(expression);
+        if (slot >= 0) {
+            slots[slot] = definition;
         } else {
-            return parent.findContextContainingKey(expression);
+            put(expression, definition);
         }
     }
 
     public void set(SExpression expression, SExpression definition) {
-        var context = findContextContainingKey(expression);
-        if (context != null) {
-            context.values.put(expression, definition);
-        } else {
-            values.put(expression, definition);
+        for (SContext context = this; context != null; context = context.parent) {
+            int slot = context.slotOf(expression);
+            if (slot >= 0) {
+                context.slots[slot] = definition;
+                return;
+            } else if (context.get(expression) != null) {
+                context.put(expression, definition);
+                return;
+            }
         }
+        put(expression, definition);
     }
 
     public SExpression find(SExpression expression) {
-        var currentValue = values.get(expression);
-        if (currentValue != null) {
-            return currentValue;
-        } else if (parent != null) {
-            return parent.find(expression);
-        } else {
-            return expression;
+        for (SContext context = this; context != null; context = context.parent) {
+            int slot = context.slotOf(expression);
+            if (slot >= 0) {
+                return context.slots[slot];
+            }
+            var currentValue = context.get(expression);
+            if (currentValue != null) {
+                return currentValue;
+            }
         }
+        return expression;
+    }
+
+    /**
+     * The value in {@code slot} of the frame {@code depth} frames out from this one.
+     */
+    SExpression slot(int depth, int slot) {
+        SContext context = this;
+        for (; depth > 0; depth--) {
+            context = context.parent;
+        }
+        return context.slots[slot];
+    }
+
+    /**
+     * The values bound in this frame, in slot order.
+     */
+    SExpression[] slots() {
+        return slots;
+    }
+
+    /**
+     * What {@code atom} is bound to in the root scope, if that is what {@link #find} gives from here;
+     * otherwise, if it is bound in a scope in between or not bound at all, null.
+     */
+    SExpression global(SAtom atom) {
+        SContext context = this;
+        for (; context.parent != null; context = context.parent) {
+            if (context.slotOf(atom) >= 0 || context.get(atom) != null) return null;
+        }
+        return context.get(atom);
+    }
+
+    /**
+     * A switch point that stays valid until {@code atom} is bound to something else in the root scope or
+     * bound in any other scope.
+     */
+    SwitchPoint guard(SAtom atom) {
+        var root = root();
+        if (root.guards == null || atom.id() >= root.guards.length) {
+            root.guards = Arrays.copyOf(root.guards == null ? new SwitchPoint[0] : root.guards, Math.max(16, atom.id() * 2));
+        }
+        var guard = root.guards[atom.id()];
+        if (guard == null) {
+            guard = new SwitchPoint();
+            root.guards[atom.id()] = guard;
+        }
+        return guard;
     }
 
     public SContext copy() {
         return new SContext(this);
     }
+
+    // The last slot wins when a name is repeated, as it would when registering the names in order.
+    private int slotOf(SExpression expression) {
+        for (int i = names.length - 1; i >= 0; i--) {
+            if (names[i].equals(expression)) return i;
+        }
+        return -1;
+    }
+
+    private void invalidate(SAtom atom) {
+        if (guards != null && atom.id() < guards.length && guards[atom.id()] != null) {
+            SwitchPoint.invalidateAll(new SwitchPoint[]{guards[atom.id()]});
+            guards[atom.id()] = null;
+        }
+    }
+
+    private SContext root() {
+        SContext context = this;
+        while (context.parent != null) {
+            context = context.parent;
+        }
+        return context;
+    }
+
+    private SExpression get(SExpression expression) {
+        if (parent == null && expression instanceof SAtom atom) {
+            return atoms != null && atom.id() < atoms.length ? atoms[atom.id()] : null;
+        }
+        return values == null ? null : values.get(expression);
+    }
+
+    private void put(SExpression expression, SExpression definition) {
+        if (parent == null && expression instanceof SAtom atom) {
+            if (atoms == null || atom.id() >= atoms.length) {
+                atoms = Arrays.copyOf(atoms == null ? NONE : atoms, Math.max(16, atom.id() * 2));
+            }
+            if (atoms[atom.id()] != definition) {
+                invalidate(atom);
+            }
+            atoms[atom.id()] = definition;
+        } else {
+            if (expression instanceof SAtom atom) {
+                root().invalidate(atom);
+            }
+            if (values == null) {
+                values = new HashMap<>();
+            }
+            values.put(expression, definition);
+        }
+    }
 }
@@ -2,19 +2,76 @@ package com.tomakeitgo.lisp;
 
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Collectors;
 
 public sealed interface SExpression {
+    /**
+     * A list. {@link #value()} is read-only: lists built by the list operators are a
+     * {@link PersistentVector} or a {@link ConsList} that later lists share, and any other list is
+     * wrapped so it cannot be changed through the expression.
+     */
     record SList(List<SExpression> value) implements SExpression {
+        public SList {
+            if (!(value instanceof PersistentVector || value instanceof ConsList)) {
+                value = Collections.unmodifiableList(value);
+            }
+        }
+
         @Override
         public String toString() {
             return "(" + value.stream().map(Objects::toString).collect(Collectors.joining(" ")) +")";
         }
     }
 
-    record SAtom(String value) implements SExpression {
+    /**
+     * A name. Every atom with the same text shares one id from the {@link SymbolTable}, so atoms compare
+     * and hash by id; {@link #of} also returns the same instance each time, so an atom from the parser
+     * usually compares equal to another by identity.
+     */
+    final class SAtom implements SExpression {
+        private final String value;
+        private final int id;
+
+        public SAtom(String value) {
+            this(value, SymbolTable.intern(value).id);
+        }
+
+        SAtom(String value, int id) {
+            this.value = value;
+            this.id = id;
+        }
+
+        /**
+         * The interned atom for {@code value}.
+         */
+        public static SAtom of(String value) {
+            return SymbolTable.intern(value);
+        }
+
+        public String value() {
+            return value;
+        }
+
+        /**
+         * The dense id of this atom's text, from zero up in the order names were first seen.
+         */
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof SAtom atom && id == atom.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return id;
+        }
+
         @Override
         public String toString() {
             return value;
@@ -34,59 +91,173 @@ public sealed interface SExpression {
             return "Error: "+ message;
         }
     }
+
+    /**
+     * A map from keys to values. Two maps are equal when they have the same entries.
+     */
+    record SMap(PersistentHashMap value) implements SExpression {
+        @Override
+        public String toString() {
+            return value.entrySet().stream()
+                    .map(entry -> entry.getKey() + " " + entry.getValue())
+                    .collect(Collectors.joining(" ", "{", "}"));
+        }
+    }
+
+    /**
+     * A set of values. Two sets are equal when they have the same elements.
+     */
+    record SSet(PersistentHashSet value) implements SExpression {
+        @Override
+        public String toString() {
+            return value.stream().map(Objects::toString).collect(Collectors.joining(" ", "#{", "}"));
+        }
+    }
     
-    record SNumber(BigDecimal value) implements SExpression {
+    /**
+     * A decimal number. An integer that fits in a {@code long} is held as one, and arithmetic between
+     * two of those uses exact {@code long} operations; anything else, or a result that would overflow or
+     * not be an integer, is computed as a {@link BigDecimal} under {@link MathContext#DECIMAL128} exactly
+     * as before. Either way the value, equality and text are those of the {@link BigDecimal}, so
+     * {@code 2} and {@code 2.0} are still different numbers.
+     */
+    final class SNumber implements SExpression {
+        private static final SNumber[] SMALL = new SNumber[1024 + 128];
+        private static final BigDecimal LONG_MIN = BigDecimal.valueOf(Long.MIN_VALUE);
+        private static final BigDecimal LONG_MAX = BigDecimal.valueOf(Long.MAX_VALUE);
+
+        static {
+            for (int i = 0; i < SMALL.length; i++) {
+                SMALL[i] = new SNumber(i - 128L, null);
+            }
+        }
+
+        private final long small;
+        // Null when the value is the integer in small.
+        private final BigDecimal big;
+
+        public SNumber(BigDecimal value) {
+            this(fitsLong(value) ? value.longValue() : 0, fitsLong(value) ? null : value);
+        }
+
         public SNumber(int value) {
-            this(new BigDecimal(value));    
+            this(value, null);
+        }
+
+        private SNumber(long small, BigDecimal big) {
+            this.small = small;
+            this.big = big;
+        }
+
+        /**
+         * The number {@code value}, shared for small values.
+         */
+        public static SNumber of(long value) {
+            return value >= -128 && value < SMALL.length - 128 ? SMALL[(int) (value + 128)] : new SNumber(value, null);
+        }
+
+        private static SNumber of(BigDecimal value) {
+            return fitsLong(value) ? of(value.longValue()) : new SNumber(0, value);
+        }
+
+        private static boolean fitsLong(BigDecimal value) {
+            if (value.scale() != 0) return false;
+            return value.precision() < 19 || value.precision() == 19
+                    && value.compareTo(LONG_MIN) >= 0 && value.compareTo(LONG_MAX) <= 0;
+        }
+
+        public BigDecimal value() {
+            return big != null ? big : BigDecimal.valueOf(small);
         }
 
         public SNumber add(SNumber value) {
-            return new SNumber(this.value.add(value.value(), MathContext.DECIMAL128));
+            if (big == null && value.big == null) {
+                long sum = small + value.small;
+                // Overflow only when both operands have the sign the sum does not.
+                if (((small ^ sum) & (value.small ^ sum)) >= 0) return of(sum);
+            }
+            return of(value().add(value.value(), MathContext.DECIMAL128));
         }
 
         public SNumber sub(SNumber value) {
-            return new SNumber(this.value.subtract(value.value(), MathContext.DECIMAL128));
+            if (big == null && value.big == null) {
+                long difference = small - value.small;
+                if (((small ^ value.small) & (small ^ difference)) >= 0) return of(difference);
+            }
+            return of(value().subtract(value.value(), MathContext.DECIMAL128));
         }
 
         public SExpression mul(SNumber value) {
-            return new SNumber(this.value.multiply(value.value(), MathContext.DECIMAL128));
+            if (big == null && value.big == null) {
+                long high = Math.multiplyHigh(small, value.small);
+                long product = small * value.small;
+                if (high == (product >> 63)) return of(product);
+            }
+            return of(value().multiply(value.value(), MathContext.DECIMAL128));
         }
 
         public SExpression div(SNumber value) {
-            return new SNumber(this.value.divide(value.value(), MathContext.DECIMAL128));
+            if (isExactLongDivision(value) && small % value.small == 0) return of(small / value.small);
+            return of(value().divide(value.value(), MathContext.DECIMAL128));
         }
 
         public SExpression mod(SNumber value) {
-            return new SNumber(this.value.remainder(value.value(), MathContext.DECIMAL128));
+            if (isExactLongDivision(value)) return of(small % value.small);
+            return of(value().remainder(value.value(), MathContext.DECIMAL128));
         }
 
         public SExpression divInt(SNumber value) {
-            return new SNumber(this.value.divideToIntegralValue(value.value(), MathContext.DECIMAL128));
+            if (isExactLongDivision(value)) return of(small / value.small);
+            return of(value().divideToIntegralValue(value.value(), MathContext.DECIMAL128));
         }
-        
+
+        // Dividing by zero, and the one quotient that overflows, are left to BigDecimal.
+        private boolean isExactLongDivision(SNumber value) {
+            return big == null && value.big == null && value.small != 0 && !(small == Long.MIN_VALUE && value.small == -1);
+        }
+
         public SExpression lt(SNumber value) {
-            return value().compareTo(value.value()) < 0 ? Interpreter.TRUE : Interpreter.FALSE;
+            return compareTo(value) < 0 ? Interpreter.TRUE : Interpreter.FALSE;
         }
-        
+
         public SExpression lte(SNumber value) {
-            return value().compareTo(value.value()) <= 0 ? Interpreter.TRUE : Interpreter.FALSE;
+            return compareTo(value) <= 0 ? Interpreter.TRUE : Interpreter.FALSE;
         }
-        
+
         public SExpression gt(SNumber value) {
-            return value().compareTo(value.value()) > 0 ? Interpreter.TRUE : Interpreter.FALSE;
+            return compareTo(value) > 0 ? Interpreter.TRUE : Interpreter.FALSE;
         }
-        
+
         public SExpression gte(SNumber value) {
-            return value().compareTo(value.value()) >= 0 ? Interpreter.TRUE : Interpreter.FALSE;
+            return compareTo(value) >= 0 ? Interpreter.TRUE : Interpreter.FALSE;
+        }
+
+        private int compareTo(SNumber value) {
+            if (big == null && value.big == null) return Long.compare(small, value.small);
+            return value().compareTo(value.value());
         }
 
         static SNumber from(String value) {
-            return new SNumber(new BigDecimal(value));
+            return of(new BigDecimal(value));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof SNumber number)) return false;
+            // A value that fits is always held as a long, so a long and a BigDecimal are never equal.
+            if (big == null || number.big == null) return big == number.big && small == number.small;
+            return big.equals(number.big);
+        }
+
+        @Override
+        public int hashCode() {
+            return big == null ? Long.hashCode(small) : big.hashCode();
         }
 
         @Override
         public String toString() {
-            return value.stripTrailingZeros().toPlainString();
+            return big == null ? Long.toString(small) : big.stripTrailingZeros().toPlainString();
         }
     }
 
@@ -98,25 +269,53 @@ public sealed interface SExpression {
         private final SExpression arguments;
         private final List<SExpression> expression;
         private final SContext context;
+        // The compiled statements of the body, or null when the tree walker evaluates them.
+        private final Compiler.Node[] body;
+        // The names bound in each call frame, in slot order.
+        private final SExpression[] parameters;
+        // Calls counted towards compiling the body to bytecode, the body once it has been, and how often
+        // a compiled body has been dropped because a definition it assumed changed.
+        private int calls;
+        private Jit.Body jitted;
+        private int deoptimizations;
 
         public Lambda(List<SExpression> remaining, SContext context) {
+            this(remaining, context, null);
+        }
+
+        Lambda(List<SExpression> remaining, SContext context, Compiler.Node[] body) {
             this.arguments = remaining.getFirst();
             this.expression = remaining;
             this.context = context;
+            this.body = body;
+            this.parameters = parameters(arguments);
+        }
+
+        /**
+         * The names a lambda with argument list {@code arguments} binds: each element of a list, or a
+         * single name bound to the list of all arguments.
+         */
+        static SExpression[] parameters(SExpression arguments) {
+            return arguments instanceof SList argList
+                    ? argList.value().toArray(SExpression[]::new)
+                    : new SExpression[]{arguments};
+        }
+
+        /**
+         * Whether the body was compiled, so calls to this lambda can be made as tail calls.
+         */
+        boolean isCompiled() {
+            return body != null;
         }
 
         @Override
         public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
-            var context = this.context.copy();
-
-            if (arguments instanceof SList argList) {
-                if (argList.value().size() != rest.size()) return new SError("Invalid number of arguments");
-                for (int i = 0; i < argList.value().size(); i++) {
-                    context.register(argList.value().get(i), rest.get(i));
-                }
-            } else {
-                context.register(arguments, new SList(rest));
+            if (body != null) {
+                return call(this, rest, interpreter);
             }
+            interpreter.step();
+            var context = bind(rest);
+            if (context == null) return new SError("Invalid number of arguments");
 
             SExpression result = new SError("Lambda body needs at least one statement");
             for (SExpression expression : expression) {
@@ -125,6 +324,67 @@ public sealed interface SExpression {
             return result;
         }
 
+        // Runs compiled bodies, making each tail call the body ends with in place of the frame it ends.
+        private static SExpression call(Lambda lambda, List<SExpression> rest, Interpreter interpreter) {
+            while (true) {
+                interpreter.step();
+                var context = lambda.bind(rest);
+                if (context == null) return new SError("Invalid number of arguments");
+
+                Object result;
+                var jitted = lambda.jitted();
+                if (jitted != null) {
+                    result = jitted.run(interpreter, context);
+                } else {
+                    var body = lambda.body;
+                    for (int i = 0; i < body.length - 1; i++) {
+                        body[i].eval(interpreter, context);
+                    }
+                    result = body[body.length - 1].tail(interpreter, context);
+                }
+                if (!(result instanceof Compiler.TailCall(Lambda next, List<SExpression> arguments))) {
+                    return (SExpression) result;
+                }
+                lambda = next;
+                rest = arguments;
+            }
+        }
+
+        // The compiled body, compiling it on the call that reaches the threshold.
+        private Jit.Body jitted() {
+            if (jitted == null && ++calls == Jit.THRESHOLD) {
+                jitted = Jit.compile(this, body, parameters.length, context);
+            }
+            return jitted;
+        }
+
+        /**
+         * Goes back to running the body's nodes, if {@code compiled} is still the compiled body, and counts
+         * calls towards compiling it again.
+         */
+        void deoptimize(Jit.Body compiled) {
+            if (jitted != compiled) return;
+            jitted = null;
+            // After that many, practically never: the definitions it depends on keep changing.
+            calls = ++deoptimizations < Jit.MAX_DEOPTIMIZATIONS ? 0 : Integer.MIN_VALUE;
+        }
+
+        /**
+         * Whether the body is running as bytecode.
+         */
+        boolean isJitted() {
+            return jitted != null;
+        }
+
+        // A new call frame holding rest, or null if there are the wrong number of arguments.
+        private SContext bind(List<SExpression> rest) {
+            if (!(arguments instanceof SList)) {
+                return new SContext(context, parameters, new SExpression[]{new SList(rest)});
+            }
+            if (parameters.length != rest.size()) return null;
+            return new SContext(context, parameters, rest.toArray(SExpression[]::new));
+        }
+
         @Override
         public String toString() {
             return "Lambda{" +
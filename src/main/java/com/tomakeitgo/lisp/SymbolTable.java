@@ -0,0 +1,49 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.SAtom;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The interned atoms, shared by every interpreter in the process. Looking up a name that is already
+ * interned takes no lock; adding one is serialised so ids stay dense. Atoms are never removed.
+ */
+public final class SymbolTable {
+    private static final ConcurrentHashMap<String, SAtom> atoms = new ConcurrentHashMap<>();
+    private static SAtom[] byId = new SAtom[256];
+
+    private SymbolTable() {
+    }
+
+    public static SAtom intern(String name) {
+        var atom = atoms.get(name);
+        return atom != null ? atom : add(name);
+    }
+
+    /**
+     * The atom with {@code id}, as given by {@link SAtom#id()}.
+     */
+    public static synchronized SAtom atom(int id) {
+        if (id < 0 || id >= atoms.size()) throw new IllegalArgumentException("no atom with id " + id);
+        return byId[id];
+    }
+
+    public static int size() {
+        return atoms.size();
+    }
+
+    private static synchronized SAtom add(String name) {
+        var atom = atoms.get(name);
+        if (atom != null) return atom;
+
+        int id = atoms.size();
+        atom = new SAtom(name, id);
+        if (id == byId.length) {
+            byId = Arrays.copyOf(byId, id * 2);
+        }
+        byId[id] = atom;
+        atoms.put(name, atom);
+        return atom;
+    }
+}
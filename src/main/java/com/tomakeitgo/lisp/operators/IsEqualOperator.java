@@ -19,4 +19,11 @@ public class IsEqualOperator implements SExpression.Operator {
         }
         return Interpreter.TRUE;
     }
+
+    /**
+     * {@code (isEqual first second)}.
+     */
+    public static SExpression isEqual(SExpression first, SExpression second) {
+        return second.equals(first) ? Interpreter.TRUE : Interpreter.FALSE;
+    }
 }
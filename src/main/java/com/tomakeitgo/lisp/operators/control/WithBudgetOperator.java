@@ -0,0 +1,38 @@
+package com.tomakeitgo.lisp.operators.control;
+
+import com.tomakeitgo.lisp.Budget;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * {@code (eval/with-budget steps ms expr)} evaluates expr with at most steps lambda calls and ms
+ * milliseconds, and is an error if it needs more. Like {@code if}, it is given its arguments unevaluated,
+ * so the expression only starts once the budget is in place.
+ */
+public class WithBudgetOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 3) {
+            return new SError("eval/with-budget requires steps, milliseconds and an expression");
+        }
+        long steps = limit(interpreter.eval(rest.get(0), definitions));
+        long millis = limit(interpreter.eval(rest.get(1), definitions));
+        if (steps < 0 || millis < 0) {
+            return new SError("eval/with-budget requires whole numbers of steps and milliseconds of at least zero");
+        }
+        return interpreter.eval(rest.get(2), definitions, new Budget(steps, millis));
+    }
+
+    // The number as a limit, or -1 if it is not a whole number of at least zero.
+    private static long limit(SExpression value) {
+        if (!(value instanceof SNumber number)) return -1;
+        try {
+            return Math.max(number.value().longValueExact(), -1);
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+    }
+}
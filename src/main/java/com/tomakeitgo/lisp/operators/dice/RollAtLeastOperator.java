@@ -0,0 +1,21 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class RollAtLeastOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 2 || !(rest.get(0) instanceof SText text) || !(rest.get(1) instanceof SNumber value)) {
+            return new SError("roll/atLeast requires a text dice expression and a number");
+        }
+        try {
+            return RollDistOperator.number(RollDistOperator.distribution(text).probabilityAtLeast(value.value().intValueExact()));
+        } catch (IllegalArgumentException | IllegalStateException | ArithmeticException e) {
+            return new SError(e.getMessage());
+        }
+    }
+}
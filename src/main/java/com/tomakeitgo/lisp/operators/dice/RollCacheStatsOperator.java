@@ -0,0 +1,22 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class RollCacheStatsOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        var stats = DiceCache.SHARED.stats();
+        return new SList(List.of(
+                SNumber.of(stats.hits()),
+                SNumber.of(stats.misses()),
+                SNumber.of(stats.evictions()),
+                SNumber.of(stats.size()),
+                SNumber.of(stats.capacity())
+        ));
+    }
+}
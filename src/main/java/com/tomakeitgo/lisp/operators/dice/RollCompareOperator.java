@@ -0,0 +1,26 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class RollCompareOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 2 || !(rest.get(0) instanceof SText a) || !(rest.get(1) instanceof SText b)) {
+            return new SError("roll/compare requires exactly two arguments of type text");
+        }
+        try {
+            var difference = RollDistOperator.distribution(a).subtract(RollDistOperator.distribution(b));
+            return new SList(List.of(
+                    RollDistOperator.number(difference.probabilityAbove(0)),
+                    RollDistOperator.number(difference.probability(0)),
+                    RollDistOperator.number(difference.probabilityBelow(0))
+            ));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new SError(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.dice.DiceProgram;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class RollCompileOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 1 || !(rest.getFirst() instanceof SText text)) {
+            return new SError("roll/compile requires exactly one argument of type text");
+        }
+        try {
+            return new CompiledRoll(DiceCache.SHARED.compile(text.value()));
+        } catch (IllegalArgumentException e) {
+            return new SError(e.getMessage());
+        }
+    }
+
+    /**
+     * A reusable roll. Calling it binds its arguments to the expression's placeholders in order.
+     */
+    public static class CompiledRoll implements SExpression.Operator {
+        private final DiceProgram program;
+
+        public CompiledRoll(DiceProgram program) {
+            this.program = program;
+        }
+
+        @Override
+        public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+            return RollOperator.roll(program, rest, interpreter.getRandom().current());
+        }
+
+        @Override
+        public String toString() {
+            return "CompiledRoll{" +
+                    "source='" + program.getSource() + '\'' +
+                    ", placeholders=" + program.getPlaceholders() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.dice.Distribution;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RollDistOperator implements SExpression.Operator {
+    private static final MathContext PRECISION = new MathContext(14);
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 1 || !(rest.getFirst() instanceof SText text)) {
+            return new SError("roll/dist requires exactly one argument of type text");
+        }
+        try {
+            var distribution = distribution(text);
+            var values = new ArrayList<SExpression>();
+            for (int value = distribution.min(); value <= distribution.max(); value++) {
+                values.add(new SList(List.of(SNumber.of(value), number(distribution.probability(value)))));
+            }
+            return new SList(values);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new SError(e.getMessage());
+        }
+    }
+
+    static Distribution distribution(SText text) {
+        return DiceCache.SHARED.compile(text.value()).distribution();
+    }
+
+    /**
+     * Rounds away the last couple of digits of floating point noise so 10.500000000000002 reads as 10.5,
+     * and a whole number such as 3500000 stays one rather than becoming 3.5E+6.
+     */
+    static SNumber number(double value) {
+        var rounded = new BigDecimal(value, PRECISION).stripTrailingZeros();
+        return new SNumber(rounded.scale() < 0 ? rounded.setScale(0) : rounded);
+    }
+}
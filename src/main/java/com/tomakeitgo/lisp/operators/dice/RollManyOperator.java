@@ -0,0 +1,46 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.lisp.IntVector;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class RollManyOperator implements SExpression.Operator {
+    // Rolls made between checks for cancellation.
+    private static final int BLOCK = 1 << 16;
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() < 2 || !(rest.get(0) instanceof SText text) || !(rest.get(1) instanceof SNumber count)) {
+            return new SError("roll/many requires a text dice expression and a number of rolls");
+        }
+        if (count.value().signum() < 0) {
+            return new SError("roll/many requires a number of rolls of at least zero");
+        }
+
+        try {
+            var program = DiceCache.SHARED.compile(text.value());
+            int[] arguments = RollOperator.bind(program, rest.subList(2, rest.size()));
+            int n = count.value().intValueExact();
+            var rand = interpreter.getRandom().current();
+            int[] values = new int[n];
+            if (n <= BLOCK) {
+                program.evalMany(rand, n, values, arguments);
+                return new SList(new IntVector(values));
+            }
+            int[] block = new int[BLOCK];
+            for (int start = 0; start < n; start += BLOCK) {
+                interpreter.checkpoint();
+                int size = Math.min(BLOCK, n - start);
+                program.evalMany(rand, size, block, arguments);
+                System.arraycopy(block, 0, values, start, size);
+            }
+            return new SList(new IntVector(values));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            return new SError(e.getMessage());
+        }
+    }
+}
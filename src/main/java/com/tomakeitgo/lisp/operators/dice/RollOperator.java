@@ -1,28 +1,50 @@
 package com.tomakeitgo.lisp.operators.dice;
 
-import com.tomakeitgo.dice.Lexer;
-import com.tomakeitgo.dice.Parser;
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.dice.DiceProgram;
+import com.tomakeitgo.dice.Parser.DiceExpression;
 import com.tomakeitgo.lisp.Interpreter;
 import com.tomakeitgo.lisp.SContext;
 import com.tomakeitgo.lisp.SExpression;
 
-import java.math.BigDecimal;
 import java.util.List;
-import java.util.Random;
 
 public class RollOperator implements SExpression.Operator {
-    private static final Random random = new Random();
 
     @Override
     public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
         var rollText = ((SExpression.SText) (rest).getFirst()).value();
-        var e = new Parser().parse(new Lexer().lex(rollText));
-        var result = e.eval((side) -> random.nextInt(1, side + 1));
-        return new SExpression.SList(List.of(
-                new SNumber(new BigDecimal(result.value())), 
-                new SText(result.description() + ": " + result.value()),
-                new SNumber(result.min()),
-                new SNumber(result.max())
-        ));
+        DiceProgram program;
+        try {
+            program = DiceCache.SHARED.compile(rollText);
+        } catch (IllegalArgumentException e) {
+            return new SError(e.getMessage());
+        }
+        return roll(program, rest.subList(1, rest.size()), interpreter.getRandom().current());
+    }
+
+    static SExpression roll(DiceProgram program, List<SExpression> arguments, DiceExpression.Rand rand) {
+        try {
+            return new SExpression.SList(new RollResultList(program.eval(rand, bind(program, arguments))));
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            return new SError(e.getMessage());
+        }
+    }
+
+    /**
+     * Converts the numbers following a dice expression into placeholder values.
+     */
+    static int[] bind(DiceProgram program, List<SExpression> arguments) {
+        if (arguments.size() != program.getPlaceholders().size()) {
+            throw new IllegalArgumentException("roll expects " + program.getPlaceholders().size() + " numbers for " + program.getPlaceholders());
+        }
+        int[] values = new int[arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            if (!(arguments.get(i) instanceof SNumber number)) {
+                throw new IllegalArgumentException("roll placeholder values must be numbers");
+            }
+            values[i] = number.value().intValueExact();
+        }
+        return values;
     }
 }
@@ -0,0 +1,27 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class RollPercentileOperator implements SExpression.Operator {
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 2 || !(rest.get(0) instanceof SText text) || !(rest.get(1) instanceof SNumber percent)) {
+            return new SError("roll/percentile requires a text dice expression and a number between 0 and 100");
+        }
+        if (percent.value().signum() < 0 || percent.value().compareTo(HUNDRED) > 0) {
+            return new SError("roll/percentile requires a text dice expression and a number between 0 and 100");
+        }
+        try {
+            return SNumber.of(RollDistOperator.distribution(text).percentile(percent.value().doubleValue() / 100));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new SError(e.getMessage());
+        }
+    }
+}
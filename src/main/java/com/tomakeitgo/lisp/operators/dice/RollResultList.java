@@ -0,0 +1,35 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.Parser.DiceExpression;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The (value description min max) list returned by roll. The description text is only built when the
+ * second element is read, which for most scripts is when the list is printed.
+ */
+class RollResultList extends AbstractList<SExpression> implements RandomAccess {
+    private final DiceExpression.Result result;
+
+    RollResultList(DiceExpression.Result result) {
+        this.result = result;
+    }
+
+    @Override
+    public SExpression get(int index) {
+        return switch (index) {
+            case 0 -> SExpression.SNumber.of(result.value());
+            case 1 -> new SExpression.SText(result.description() + ": " + result.value());
+            case 2 -> SExpression.SNumber.of(result.min());
+            case 3 -> SExpression.SNumber.of(result.max());
+            default -> throw new IndexOutOfBoundsException(index);
+        };
+    }
+
+    @Override
+    public int size() {
+        return 4;
+    }
+}
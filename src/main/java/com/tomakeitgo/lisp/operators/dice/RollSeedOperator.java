@@ -0,0 +1,36 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class RollSeedOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.isEmpty() || rest.size() > 2 || !(rest.getFirst() instanceof SNumber seed)) {
+            return new SError("roll/seed requires a number and optionally the text name of a random algorithm");
+        }
+        long value;
+        try {
+            value = seed.value().longValueExact();
+        } catch (ArithmeticException e) {
+            return new SError("roll/seed requires a whole number seed between " + Long.MIN_VALUE + " and " + Long.MAX_VALUE);
+        }
+        var random = interpreter.getRandom();
+        try {
+            if (rest.size() == 2) {
+                if (!(rest.get(1) instanceof SText algorithm)) {
+                    return new SError("roll/seed requires a number and optionally the text name of a random algorithm");
+                }
+                random.seed(algorithm.value(), value);
+            } else {
+                random.seed(value);
+            }
+        } catch (IllegalArgumentException e) {
+            return new SError(e.getMessage());
+        }
+        return new SText(random.getAlgorithm());
+    }
+}
@@ -0,0 +1,62 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.dice.Simulation;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+public class RollSimulateOperator implements SExpression.Operator {
+    private static final int[] PERCENTILES = {1, 5, 25, 50, 75, 95, 99};
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() < 2 || !(rest.get(0) instanceof SText text) || !(rest.get(1) instanceof SNumber count)) {
+            return new SError("roll/simulate requires a text dice expression and a number of rolls");
+        }
+        if (count.value().signum() <= 0) {
+            return new SError("roll/simulate requires at least one roll");
+        }
+
+        Simulation simulation;
+        try {
+            var program = DiceCache.SHARED.compile(text.value());
+            int[] arguments = RollOperator.bind(program, rest.subList(2, rest.size()));
+            simulation = Simulation.run(program, count.value().longValueExact(), interpreter.getRandom(), arguments);
+        } catch (CancellationException e) {
+            throw e;
+        } catch (IllegalArgumentException | IllegalStateException | ArithmeticException e) {
+            return new SError(e.getMessage());
+        }
+
+        var percentiles = new ArrayList<SExpression>();
+        for (int percentile : PERCENTILES) {
+            percentiles.add(new SList(List.of(
+                    SNumber.of(percentile),
+                    SNumber.of(simulation.percentile(percentile / 100.0))
+            )));
+        }
+        var histogram = new ArrayList<SExpression>();
+        for (long[] bucket : simulation.histogram()) {
+            histogram.add(new SList(List.of(SNumber.of(bucket[0]), SNumber.of(bucket[1]))));
+        }
+
+        return new SList(List.of(
+                entry("rolls", SNumber.of(simulation.rolls())),
+                entry("mean", RollDistOperator.number(simulation.mean())),
+                entry("variance", RollDistOperator.number(simulation.variance())),
+                entry("min", SNumber.of(simulation.min())),
+                entry("max", SNumber.of(simulation.max())),
+                entry("percentiles", new SList(percentiles)),
+                entry("histogram", new SList(histogram))
+        ));
+    }
+
+    private static SExpression entry(String name, SExpression value) {
+        return new SList(List.of(new SAtom(name), value));
+    }
+}
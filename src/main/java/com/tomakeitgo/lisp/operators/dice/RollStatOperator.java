@@ -0,0 +1,32 @@
+package com.tomakeitgo.lisp.operators.dice;
+
+import com.tomakeitgo.dice.DiceCache;
+import com.tomakeitgo.dice.DiceProgram;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+public class RollStatOperator implements SExpression.Operator {
+    private final String name;
+    private final ToDoubleFunction<DiceProgram> statistic;
+
+    public RollStatOperator(String name, ToDoubleFunction<DiceProgram> statistic) {
+        this.name = name;
+        this.statistic = statistic;
+    }
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 1 || !(rest.getFirst() instanceof SText text)) {
+            return new SError(name + " requires exactly one argument of type text");
+        }
+        try {
+            return RollDistOperator.number(statistic.applyAsDouble(DiceCache.SHARED.compile(text.value())));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return new SError(e.getMessage());
+        }
+    }
+}
@@ -1,10 +1,10 @@
 package com.tomakeitgo.lisp.operators.list;
 
 import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentVector;
 import com.tomakeitgo.lisp.SContext;
 import com.tomakeitgo.lisp.SExpression;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ListAppendOperator implements SExpression.Operator {
@@ -16,8 +16,6 @@ public class ListAppendOperator implements SExpression.Operator {
         if (!(rest.getFirst() instanceof SExpression.SList list)) {
             return new SError("first argument must be a list");
         }
-        var result = new ArrayList<>(list.value());
-        result.addAll(rest.subList(1, rest.size()));
-        return new SExpression.SList(result);
+        return new SExpression.SList(PersistentVector.of(list.value()).appendAll(rest.subList(1, rest.size())));
     }
 }
@@ -1,10 +1,10 @@
 package com.tomakeitgo.lisp.operators.list;
 
+import com.tomakeitgo.lisp.ConsList;
 import com.tomakeitgo.lisp.Interpreter;
 import com.tomakeitgo.lisp.SContext;
 import com.tomakeitgo.lisp.SExpression;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public class ListPrependOperator implements SExpression.Operator {
@@ -16,9 +16,10 @@ public class ListPrependOperator implements SExpression.Operator {
         if (!(rest.getFirst() instanceof SList list)) {
             return new SError("first argument must be a list");
         }
-        var result = new ArrayList<SExpression>();
-        result.addAll(rest.subList(1, rest.size()));
-        result.addAll(list.value());
+        List<SExpression> result = list.value();
+        for (int i = rest.size() - 1; i >= 1; i--) {
+            result = ConsList.cons(rest.get(i), result);
+        }
         return new SList(result);
     }
 }
@@ -1,6 +1,8 @@
 package com.tomakeitgo.lisp.operators.list;
 
+import com.tomakeitgo.lisp.ConsList;
 import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentVector;
 import com.tomakeitgo.lisp.SContext;
 import com.tomakeitgo.lisp.SExpression;
 
@@ -22,6 +24,10 @@ public class ListRestOperator implements SExpression.Operator {
             return new SError("rest called on an empty list");
         }
 
-        return new SExpression.SList(list.value().subList(1, list.value().size()));
+        return new SExpression.SList(switch (list.value()) {
+            case ConsList cell -> cell.rest();
+            case PersistentVector vector -> vector.drop(1);
+            case List<SExpression> value -> value.subList(1, value.size());
+        });
     }
 }
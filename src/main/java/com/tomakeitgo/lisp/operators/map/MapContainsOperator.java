@@ -0,0 +1,17 @@
+package com.tomakeitgo.lisp.operators.map;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class MapContainsOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 2 || !(rest.getFirst() instanceof SMap map)) {
+            return new SError("map/contains requires a map and a key");
+        }
+        return map.value().containsKey(rest.get(1)) ? Interpreter.TRUE : Interpreter.FALSE;
+    }
+}
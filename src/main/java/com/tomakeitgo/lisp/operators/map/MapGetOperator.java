@@ -0,0 +1,25 @@
+package com.tomakeitgo.lisp.operators.map;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * {@code (map/get map key)} is the value for the key, and an error if there is none;
+ * {@code (map/get map key default)} is the default instead.
+ */
+public class MapGetOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() < 2 || rest.size() > 3 || !(rest.getFirst() instanceof SMap map)) {
+            return new SError("map/get requires a map, a key and optionally a default");
+        }
+        var value = map.value().get(rest.get(1));
+        if (value != null) {
+            return value;
+        }
+        return rest.size() == 3 ? rest.get(2) : new SError("map/get found no value for " + rest.get(1));
+    }
+}
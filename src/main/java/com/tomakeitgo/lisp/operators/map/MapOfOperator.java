@@ -0,0 +1,29 @@
+package com.tomakeitgo.lisp.operators.map;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentHashMap;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * {@code (map/of key value ...)} or {@code (map/of ((key value) ...))}. A later value for a key replaces
+ * an earlier one.
+ */
+public class MapOfOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() == 1 && rest.getFirst() instanceof SList rows) {
+            var map = PersistentHashMap.EMPTY;
+            for (SExpression row : rows.value()) {
+                if (!(row instanceof SList pair) || pair.value().size() != 2) {
+                    return new SError("map/of rows must be (key value) pairs");
+                }
+                map = map.with(pair.value().get(0), pair.value().get(1));
+            }
+            return new SMap(map);
+        }
+        return MapPutOperator.put(PersistentHashMap.EMPTY, rest, "map/of requires key and value pairs");
+    }
+}
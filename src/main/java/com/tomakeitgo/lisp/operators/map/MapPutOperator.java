@@ -0,0 +1,32 @@
+package com.tomakeitgo.lisp.operators.map;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentHashMap;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * {@code (map/put map key value ...)} is the map with each key mapped to the value after it. The map
+ * itself is unchanged.
+ */
+public class MapPutOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.isEmpty() || !(rest.getFirst() instanceof SMap map)) {
+            return new SError("map/put requires a map followed by key and value pairs");
+        }
+        return put(map.value(), rest.subList(1, rest.size()), "map/put requires a map followed by key and value pairs");
+    }
+
+    static SExpression put(PersistentHashMap map, List<SExpression> pairs, String error) {
+        if (pairs.size() % 2 != 0) {
+            return new SError(error);
+        }
+        for (int i = 0; i < pairs.size(); i += 2) {
+            map = map.with(pairs.get(i), pairs.get(i + 1));
+        }
+        return new SMap(map);
+    }
+}
@@ -0,0 +1,24 @@
+package com.tomakeitgo.lisp.operators.map;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * {@code (map/remove map key ...)} is the map without the keys. The map itself is unchanged.
+ */
+public class MapRemoveOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.isEmpty() || !(rest.getFirst() instanceof SMap map)) {
+            return new SError("map/remove requires a map followed by keys");
+        }
+        var result = map.value();
+        for (SExpression key : rest.subList(1, rest.size())) {
+            result = result.without(key);
+        }
+        return new SMap(result);
+    }
+}
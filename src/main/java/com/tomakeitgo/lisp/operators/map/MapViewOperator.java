@@ -0,0 +1,42 @@
+package com.tomakeitgo.lisp.operators.map;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentHashMap;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Something computed from one map, such as its size or its keys.
+ */
+public class MapViewOperator implements SExpression.Operator {
+    private final String name;
+    private final Function<PersistentHashMap, SExpression> view;
+
+    public MapViewOperator(String name, Function<PersistentHashMap, SExpression> view) {
+        this.name = name;
+        this.view = view;
+    }
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 1 || !(rest.getFirst() instanceof SMap map)) {
+            return new SError(name + " requires exactly one argument of type map");
+        }
+        return view.apply(map.value());
+    }
+
+    /**
+     * The {@code (key value)} pairs of {@code map}, in the same order as its keys and values.
+     */
+    public static SExpression entries(PersistentHashMap map) {
+        var entries = new ArrayList<SExpression>(map.size());
+        for (var entry : map.entrySet()) {
+            entries.add(new SList(List.of(entry.getKey(), entry.getValue())));
+        }
+        return new SList(entries);
+    }
+}
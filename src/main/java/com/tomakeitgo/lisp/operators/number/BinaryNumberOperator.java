@@ -8,22 +8,46 @@ import java.util.List;
 import java.util.function.BiFunction;
 
 public class BinaryNumberOperator implements SExpression.Operator {
+    private final String method;
     private final BiFunction<SExpression.SNumber, SExpression.SNumber, SExpression> operation;
 
     public BinaryNumberOperator(BiFunction<SExpression.SNumber, SExpression.SNumber, SExpression> operation) {
+        this(null, operation);
+    }
+
+    /**
+     * An operator whose {@code operation} is the {@link SExpression.SNumber} method named {@code method},
+     * so compiled code can call the method itself.
+     */
+    public BinaryNumberOperator(String method, BiFunction<SExpression.SNumber, SExpression.SNumber, SExpression> operation) {
+        this.method = method;
         this.operation = operation;
     }
 
     @Override
     public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
         if (rest.size() == 2) {
-            if (rest.get(0) instanceof SExpression.SNumber first && rest.get(1) instanceof SExpression.SNumber second) {
-                return operation.apply(first, second);
-            } else {
-                return new SError("requires two arguments of type Number");
-            }
+            return apply(rest.get(0), rest.get(1));
         } else {
             return new SError("requires two arguments of type Number");
         }
     }
+
+    /**
+     * The operation on two arguments, as {@link #eval} would give it with them as a list.
+     */
+    public SExpression apply(SExpression first, SExpression second) {
+        if (first instanceof SExpression.SNumber a && second instanceof SExpression.SNumber b) {
+            return operation.apply(a, b);
+        } else {
+            return new SError("requires two arguments of type Number");
+        }
+    }
+
+    /**
+     * The name of the {@link SExpression.SNumber} method the operation is, or null if it is not one.
+     */
+    public String method() {
+        return method;
+    }
 }
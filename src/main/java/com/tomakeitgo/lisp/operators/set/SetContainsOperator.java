@@ -0,0 +1,17 @@
+package com.tomakeitgo.lisp.operators.set;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+public class SetContainsOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 2 || !(rest.getFirst() instanceof SSet set)) {
+            return new SError("set/contains requires a set and a value");
+        }
+        return set.value().contains(rest.get(1)) ? Interpreter.TRUE : Interpreter.FALSE;
+    }
+}
@@ -0,0 +1,22 @@
+package com.tomakeitgo.lisp.operators.set;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentHashSet;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * {@code (set/of value ...)} is the set of the values, dropping repeats.
+ */
+public class SetOfOperator implements SExpression.Operator {
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        var set = PersistentHashSet.EMPTY;
+        for (SExpression value : rest) {
+            set = set.with(value);
+        }
+        return new SSet(set);
+    }
+}
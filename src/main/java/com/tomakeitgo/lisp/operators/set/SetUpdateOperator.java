@@ -0,0 +1,34 @@
+package com.tomakeitgo.lisp.operators.set;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentHashSet;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * A set with each of the other arguments added or removed in turn. The set itself is unchanged.
+ */
+public class SetUpdateOperator implements SExpression.Operator {
+    private final String name;
+    private final BiFunction<PersistentHashSet, SExpression, PersistentHashSet> update;
+
+    public SetUpdateOperator(String name, BiFunction<PersistentHashSet, SExpression, PersistentHashSet> update) {
+        this.name = name;
+        this.update = update;
+    }
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.isEmpty() || !(rest.getFirst() instanceof SSet set)) {
+            return new SError(name + " requires a set followed by values");
+        }
+        var result = set.value();
+        for (SExpression value : rest.subList(1, rest.size())) {
+            result = update.apply(result, value);
+        }
+        return new SSet(result);
+    }
+}
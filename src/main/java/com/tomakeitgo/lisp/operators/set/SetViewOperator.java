@@ -0,0 +1,30 @@
+package com.tomakeitgo.lisp.operators.set;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.PersistentHashSet;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Something computed from one set, such as its size or its elements.
+ */
+public class SetViewOperator implements SExpression.Operator {
+    private final String name;
+    private final Function<PersistentHashSet, SExpression> view;
+
+    public SetViewOperator(String name, Function<PersistentHashSet, SExpression> view) {
+        this.name = name;
+        this.view = view;
+    }
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.size() != 1 || !(rest.getFirst() instanceof SSet set)) {
+            return new SError(name + " requires exactly one argument of type set");
+        }
+        return view.apply(set.value());
+    }
+}
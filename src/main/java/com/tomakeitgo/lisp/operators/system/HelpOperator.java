@@ -21,16 +21,33 @@ public class HelpOperator implements SExpression.Operator {
                 "Available operations:",
                 "",
                 "  eval         (eval ...)                     evaluate the given expressions and returns the last one",
+                "  eval/with-budget (eval/with-budget 1000 50 expr) evaluate with at most 1000 calls and 50 ms",
                 "  if           (if condition then else)       conditional evaluation",
                 "  cond         (cond (test expr) ...)        multi-branch conditional",
                 "  isEqual      (isEqual a b ...)              equality check",
                 "  roll         (roll '2d6')                   dice roll",
+                "  roll/compile (roll/compile '+ Nd6 M')       reusable roll, placeholders bound per call",
+                "  roll/many    (roll/many '3d6' 1000)         values of many rolls as one list",
+                "  roll/seed    (roll/seed 42 'SplittableRandom') reseed this session, optionally changing algorithm",
+                "  roll/cacheStats (roll/cacheStats)           dice cache (hits misses evictions size capacity)",
+                "  roll/dist    (roll/dist '3d6')              exact ((value probability) ...) of a roll",
+                "  roll/mean    (roll/mean '3d6')              expected value of a roll",
+                "  roll/stddev  (roll/stddev '3d6')            standard deviation of a roll",
+                "  roll/percentile (roll/percentile '3d6' 90)  smallest value at or above the percentile",
+                "  roll/compare (roll/compare '2d6' '1d12')    (P(a > b) P(a = b) P(a < b))",
+                "  roll/atLeast (roll/atLeast '10d10>=7' 3)    chance of rolling at least the number",
+                "  roll/simulate (roll/simulate '3d6' 100000)  parallel Monte Carlo statistics and histogram",
+                "  table/define (table/define 3 'gold' 1 'gem') weighted table, values may be tables",
+                "  table/roll   (table/roll loot 10)           one value from a table, or a list of n",
                 "  type/isList  (type/isList x)                check if value is a list",
                 "  type/isText  (type/isText x)                check if value is text",
                 "  type/isAtom  (type/isAtom x)                check if value is an atom",
                 "  type/isNumber (type/isNumber x)             check if value is a number",
                 "  type/isError (type/isError x)               check if value is an error",
                 "  type/isLambda (type/isLambda x)             check if value is a lambda",
+                "  type/isTable (type/isTable x)               check if value is a weighted table",
+                "  type/isMap   (type/isMap x)                 check if value is a map",
+                "  type/isSet   (type/isSet x)                 check if value is a set",
                 "  text/concat  (text/concat a b ...)          string concatenation",
                 "  number/add   (number/add a b)               addition",
                 "  number/sub   (number/sub a b)               subtraction",
@@ -43,6 +60,17 @@ public class HelpOperator implements SExpression.Operator {
                 "  list/isEmpty (list/isEmpty x)               check if list is empty",
                 "  list/first  (list/first x)                  get first item of a list",
                 "  list/rest   (list/rest x)                   get all items except the first",
+                "  map/of       (map/of 'hp' 10 'ac' 15)       map from keys to values",
+                "  map/get      (map/get m key default)        value for a key, or the default",
+                "  map/put      (map/put m key value ...)      map with keys set",
+                "  map/remove   (map/remove m key ...)         map without keys",
+                "  map/contains (map/contains m key)           check if map has a key",
+                "  map/size     (map/size m)                   number of keys",
+                "  map/keys     (map/keys m)                   keys, values or (key value) entries as a list",
+                "  set/of       (set/of a b ...)               set of values",
+                "  set/add      (set/add s a ...)              set with values added, or set/remove",
+                "  set/contains (set/contains s a)             check if set has a value",
+                "  set/size     (set/size s)                   number of values, or set/toList for a list",
                 "  def          (def name value)               define a binding",
                 "  lambda       (lambda (args) body)           create a function",
                 "  help         (help)                         show this help",
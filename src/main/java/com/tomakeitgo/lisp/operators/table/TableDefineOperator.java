@@ -0,0 +1,48 @@
+package com.tomakeitgo.lisp.operators.table;
+
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code (table/define 3 'gold' 1 'gem')} or {@code (table/define rows)} where rows is a list of
+ * {@code (weight value)} lists, such as one built with {@code list}.
+ */
+public class TableDefineOperator implements SExpression.Operator {
+    private static final String USAGE = "table/define requires weight and value pairs, or one list of (weight value) rows";
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        var cells = rest;
+        if (rest.size() == 1 && rest.getFirst() instanceof SList rows) {
+            cells = new ArrayList<>();
+            for (SExpression row : rows.value()) {
+                if (!(row instanceof SList pair) || pair.value().size() != 2) {
+                    return new SError(USAGE);
+                }
+                cells.addAll(pair.value());
+            }
+        }
+        if (cells.isEmpty() || cells.size() % 2 != 0) {
+            return new SError(USAGE);
+        }
+
+        double[] weights = new double[cells.size() / 2];
+        var values = new ArrayList<SExpression>(weights.length);
+        for (int i = 0; i < weights.length; i++) {
+            if (!(cells.get(2 * i) instanceof SNumber weight)) {
+                return new SError(USAGE);
+            }
+            weights[i] = weight.value().doubleValue();
+            values.add(cells.get(2 * i + 1));
+        }
+        try {
+            return new WeightedTable(weights, values);
+        } catch (IllegalArgumentException e) {
+            return new SError(e.getMessage());
+        }
+    }
+}
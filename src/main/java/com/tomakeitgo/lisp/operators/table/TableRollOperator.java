@@ -0,0 +1,52 @@
+package com.tomakeitgo.lisp.operators.table;
+
+import com.tomakeitgo.dice.Parser.DiceExpression.Rand;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code (table/roll table)} draws one value, {@code (table/roll table n)} a list of n values.
+ */
+public class TableRollOperator implements SExpression.Operator {
+    // Draws made between checks for cancellation, less one.
+    private static final int CHECK_MASK = (1 << 16) - 1;
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        if (rest.isEmpty() || !(rest.getFirst() instanceof WeightedTable table)) {
+            return new SError("table/roll requires a table and optionally a number of draws");
+        }
+        return roll(table, rest.subList(1, rest.size()), interpreter);
+    }
+
+    static SExpression roll(WeightedTable table, List<SExpression> arguments, Interpreter interpreter) {
+        Rand rand = interpreter.getRandom().current();
+        if (arguments.isEmpty()) {
+            return table.draw(rand);
+        }
+        if (arguments.size() != 1 || !(arguments.getFirst() instanceof SNumber count)) {
+            return new SError("table/roll requires a table and optionally a number of draws");
+        }
+        int n;
+        try {
+            n = count.value().intValueExact();
+        } catch (ArithmeticException e) {
+            return new SError("table/roll requires a whole number of draws");
+        }
+        if (n < 0) {
+            return new SError("table/roll requires a number of draws of at least zero");
+        }
+        var draws = new ArrayList<SExpression>(n);
+        for (int i = 0; i < n; i++) {
+            if ((i & CHECK_MASK) == CHECK_MASK) {
+                interpreter.checkpoint();
+            }
+            draws.add(table.draw(rand));
+        }
+        return new SList(draws);
+    }
+}
@@ -0,0 +1,59 @@
+package com.tomakeitgo.lisp.operators.table;
+
+import com.tomakeitgo.dice.AliasTable;
+import com.tomakeitgo.dice.Parser.DiceExpression.Rand;
+import com.tomakeitgo.lisp.Interpreter;
+import com.tomakeitgo.lisp.SContext;
+import com.tomakeitgo.lisp.SExpression;
+
+import java.util.List;
+
+/**
+ * A weighted random table compiled into alias arrays, so a draw costs the same however many rows the
+ * table has. A row whose value is another table draws from that table in turn. Calling the table draws
+ * from it, the same as {@code table/roll}.
+ */
+public class WeightedTable implements SExpression.Operator {
+    private final AliasTable alias;
+    private final SExpression[] values;
+    private final double[] weights;
+
+    public WeightedTable(double[] weights, List<SExpression> values) {
+        if (weights.length != values.size()) {
+            throw new IllegalArgumentException("A table needs one weight per value");
+        }
+        this.alias = new AliasTable(weights);
+        this.values = values.toArray(SExpression[]::new);
+        this.weights = weights.clone();
+    }
+
+    /**
+     * Draws one row, following nested tables down to a value.
+     */
+    public SExpression draw(Rand rand) {
+        SExpression value = this;
+        while (value instanceof WeightedTable table) {
+            value = table.values[table.alias.sample(rand)];
+        }
+        return value;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    @Override
+    public SExpression eval(List<SExpression> rest, Interpreter interpreter, SContext definitions) {
+        return TableRollOperator.roll(this, rest, interpreter);
+    }
+
+    @Override
+    public String toString() {
+        var text = new StringBuilder("WeightedTable{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) text.append(", ");
+            text.append(weights[i]).append('=').append(values[i]);
+        }
+        return text.append('}').toString();
+    }
+}
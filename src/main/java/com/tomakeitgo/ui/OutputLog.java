@@ -13,12 +13,21 @@ import java.util.function.Supplier;
 
 public class OutputLog implements TabPane.Panel {
     private final Supplier<List<String>> source;
+    private final Supplier<String> status;
     private int rowLength = 0;
     private final int maxRows = 20;
     private int offset = 0;
 
     public OutputLog(Supplier<List<String>> source) {
+        this(source, () -> null);
+    }
+
+    /**
+     * A log that also shows {@code status} above the newest line while it is not null.
+     */
+    public OutputLog(Supplier<List<String>> source, Supplier<String> status) {
         this.source = source;
+        this.status = status;
     }
 
     public void resize(TerminalSize size) {
@@ -66,6 +75,10 @@ public class OutputLog implements TabPane.Panel {
             }
         }
 
+        var current = status.get();
+        if (current != null) {
+            displayLines.addAll(Strings.chunk(current, availableWidth).reversed());
+        }
         return displayLines;
     }
 
@@ -22,7 +22,7 @@ public class Screen {
         this.inputBar = new InputBar(context);
         this.tabPane = new TabPane();
 
-        tabPane.addTab("Output", new OutputLog(context::getCommandOutput));
+        tabPane.addTab("Output", new OutputLog(context::getCommandOutput, context::getStatus));
         tabPane.addTab("Console", new OutputLog(context::getConsoleLog));
         
         context.addAvailableActive(inputBar);
@@ -34,8 +34,10 @@ public class Screen {
         return tabPane;
     }
 
-    public void input(KeyStroke stroke) throws IOException {
-        if (stroke.getKeyType().equals(KeyType.Tab)) {
+    public synchronized void input(KeyStroke stroke) throws IOException {
+        if (stroke.getKeyType().equals(KeyType.Escape)) {
+            context.cancel();
+        } else if (stroke.getKeyType().equals(KeyType.Tab)) {
             if (context.isActive(inputBar)) {
                 context.setActivePane(tabPane);
                 tabPane.firstTab();
@@ -60,7 +62,7 @@ public class Screen {
         }
     }
 
-    public void resize(TerminalSize size) {
+    public synchronized void resize(TerminalSize size) {
         clockBar.resize(size);
         tabPane.resize(size);
         inputBar.resize(size);
@@ -72,7 +74,9 @@ public class Screen {
         }
     }
 
-    public void draw() throws IOException {
+    // Synchronized with input and resize, so the changes evaluations ask for never interleave with keystrokes.
+    public synchronized void draw() throws IOException {
+        context.applyScreenChanges();
         clockBar.draw(terminal);
         tabPane.draw(terminal, context.isActive(tabPane));
         inputBar.draw(terminal);
@@ -0,0 +1,127 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompilerTest {
+
+    @Test
+    void testMatchesTheLexerWithoutTokens() {
+        assertEquals("", compileAndEval("").description());
+        assertEquals("12", compileAndEval("12").description());
+        assertEquals("3D6(18)", compileAndEval("3 d 6").description());
+        assertEquals("+ 1D4(4) 1", compileAndEval("+1d4 1").description());
+        assertEquals("+ 2 -5", compileAndEval("+ 2 -5").description());
+        assertEquals(-3, compileAndEval("- 2 5").value());
+        assertEquals("+ 1 + 2 3", compileAndEval("+ 1 + 2 3").description());
+    }
+
+    @Test
+    void testSkipsWhatTheLexerSkips() {
+        assertEquals("+ 1D4(4) 2", compileAndEval("[+ 1d4, 2]").description());
+        assertEquals("", compileAndEval("!?").description());
+    }
+
+    @Test
+    void testPrefixReadsOnlyTheFirstExpression() {
+        assertEquals("+ 3D6(18) 5", compileAndEval("+ 3d6 5 *").description());
+        assertEquals(-2, compileAndEval("-2 5").value());
+    }
+
+    @Test
+    void testInfixPrecedence() {
+        assertEquals(23, compileAndEval("3d6 + 5").value());
+        assertEquals("3D6(18) + 5", compileAndEval("3d6 + 5").description());
+        assertEquals(14, compileAndEval("2 + 3 * 4").value());
+        assertEquals(20, compileAndEval("(2 + 3) * 4").value());
+        assertEquals(2, compileAndEval("8 - 4 - 2").value());
+        assertEquals(2, compileAndEval("12 / 3 / 2").value());
+        assertEquals(-3, compileAndEval("-7 / 2").value());
+        assertEquals("(2D6(12) + 3) * 2", compileAndEval("(2d6+3)*2").description());
+        assertEquals("-(1D4(4) - 2)", compileAndEval("-(d4 - 2)").description());
+        assertEquals(6, compileAndEval("d6").value());
+        assertThrows(ArithmeticException.class, () -> compileAndEval("1d6 / (2 - 2)"));
+    }
+
+    @Test
+    void testKeepsTheTextOfNumbersWrittenUnusually() {
+        assertEquals("+ 007 -0 12", compileAndEval("+ 007 -0 12").description());
+        assertEquals(19, compileAndEval("+ 007 -0 12").value());
+        assertEquals(new Parser.Operand("3", 3, -1), Parser.Operand.of(3));
+        assertEquals("3", Parser.Operand.of(3).text());
+    }
+
+    @Test
+    void testPlaceholders() {
+        List<String> placeholders = new ArrayList<>();
+        var expression = new Compiler().compile("+ NdS N", placeholders);
+        assertEquals(List.of("N", "S"), placeholders);
+        assertEquals(14, expression.evalValue(max -> max, new int[]{2, 6}, null));
+    }
+
+    @Test
+    void testRejectsOperatorsWithoutValues() {
+        assertThrows(IllegalArgumentException.class, () -> new Compiler().compile("+ 1 d"));
+    }
+
+    @Test
+    void testTextThatIsNotInfixReadsAsPrefix() {
+        assertEquals("3D6(18)", compileAndEval("3d6 5").description());
+        assertEquals("2D6(12)", compileAndEval("2d6 x").description());
+        assertEquals(3, compileAndEval("3 +").value());
+        assertEquals("1D6(6)", compileAndEval("(1d6 + 2").description());
+        assertEquals("1", compileAndEval("1d").description());
+
+        List<String> placeholders = new ArrayList<>();
+        new Compiler().compile("NdS M", placeholders);
+        assertEquals(List.of("N", "S"), placeholders);
+    }
+
+    @Test
+    void testLeadingMinusNegatesDice() {
+        var expression = new Compiler().compile("-1d6");
+        assertInstanceOf(Parser.Negate.class, expression);
+        assertEquals(-6, expression.eval(max -> max).value());
+        assertEquals(-1, expression.eval(max -> 1).value());
+        // Followed by more text it is still the prefix pool of -1 dice.
+        assertEquals(0, compileAndEval("-1d6 3").value());
+    }
+
+    @Test
+    void testDiceModifiers() {
+        var expression = new Compiler().compile("4d6kh3");
+        assertInstanceOf(Parser.ModifiedDice.class, expression);
+        assertEquals("4D6kh3(18)", expression.eval(max -> max).description());
+        assertEquals("+ 8D6r1!dl2(756) 1", compileAndEval("+ 8D6R1!DL2 1").description());
+        assertEquals("2D20kh1(20)", compileAndEval("2d20k1").description());
+        assertEquals("4D6(24)", compileAndEval("4d6 kh3").description());
+        assertThrows(IllegalArgumentException.class, () -> new Compiler().compile("4d6kh3kl1"));
+        assertThrows(IllegalArgumentException.class, () -> new Compiler().compile("4d6r6"));
+    }
+
+    @Test
+    void testSuccessPools() {
+        var pool = assertInstanceOf(Parser.SuccessPool.class, new Compiler().compile("10d10>=7"));
+        assertEquals(Parser.SuccessPool.Comparison.AT_LEAST, pool.getComparison());
+        assertEquals(0.4, pool.chance(Parser.DiceExpression.NO_ARGUMENTS), 1e-12);
+        assertEquals(0.5, ((Parser.SuccessPool) new Compiler().compile("1d6<4")).chance(Parser.DiceExpression.NO_ARGUMENTS), 1e-12);
+        assertEquals("+ 3d6 2d8>T", Normalizer.canonical(Normalizer.normalize(new Compiler().compile("+ 2d8>T 3d6"))));
+        assertThrows(IllegalArgumentException.class, () -> new Compiler().compile("4d6kh3>=5"));
+        assertThrows(IllegalArgumentException.class, () -> new Compiler().compile("10d10>="));
+    }
+
+    @Test
+    void testRejectsNumbersOutsideInt() {
+        assertEquals(Integer.MIN_VALUE, compileAndEval("-2147483648").value());
+        assertThrows(NumberFormatException.class, () -> new Compiler().compile("2147483648"));
+        assertThrows(NumberFormatException.class, () -> new Compiler().compile("99999999999999999999"));
+    }
+
+    private static Parser.DiceExpression.Result compileAndEval(String expression) {
+        return new Compiler().compile(expression).eval(max -> max);
+    }
+}
@@ -0,0 +1,58 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiceCacheTest {
+
+    @Test
+    void repeatedText_expectSameProgram() {
+        var cache = new DiceCache(4);
+        var first = cache.compile("+ 3d6 5");
+        var second = cache.compile("+ 3d6 5");
+
+        assertSame(first, second);
+        assertEquals(new DiceCache.Stats(1, 1, 0, 1, 4), cache.stats());
+    }
+
+    @Test
+    void equivalentSpellings_expectSharedProgram() {
+        var cache = new DiceCache(4);
+        var first = cache.compile("+ 3d6 2d6 1");
+        var second = cache.compile("+ 1 5d6");
+
+        assertSame(first, second);
+        assertEquals("+ 5d6 1", second.getCanonical());
+        assertEquals(new DiceCache.Stats(0, 2, 0, 1, 4), cache.stats());
+        assertSame(first, cache.compile("+ 1 5d6"));
+        assertEquals(new DiceCache.Stats(1, 2, 0, 1, 4), cache.stats());
+        assertNotSame(cache.compile("+ N M"), cache.compile("+ M N"));
+    }
+
+    @Test
+    void overCapacity_expectLeastRecentlyUsedEvicted() {
+        var cache = new DiceCache(2);
+        var a = cache.compile("1d4");
+        cache.compile("1d6");
+        cache.compile("1d4");
+        cache.compile("1d8");
+
+        assertSame(a, cache.compile("1d4"));
+        assertEquals(1, cache.stats().evictions());
+        assertEquals(2, cache.stats().size());
+
+        cache.compile("1d6");
+        assertEquals(4, cache.stats().misses());
+    }
+
+    @Test
+    void program_expectPlaceholdersBoundPerCall() {
+        var program = new DiceCache(1).compile("+ Nd6 M");
+
+        assertEquals(java.util.List.of("N", "M"), program.getPlaceholders());
+        assertEquals(23, program.eval(max -> max, 3, 5).value());
+        assertEquals(14, program.eval(max -> max, 1, 8).value());
+        assertThrows(IllegalArgumentException.class, () -> program.eval(max -> max, 1));
+    }
+}
@@ -0,0 +1,135 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiceSamplerTest {
+
+    @Test
+    void binomial_expectMeanAndVariance() {
+        var rand = seeded(7);
+        int[][] cases = {{40, 10}, {1000, 2}, {100000, 6}};
+        for (int[] c : cases) {
+            int n = c[0];
+            double p = 1.0 / c[1];
+            int samples = 50000;
+            double sum = 0;
+            double squares = 0;
+            for (int i = 0; i < samples; i++) {
+                int x = DiceSampler.binomial(rand, n, p);
+                assertTrue(x >= 0 && x <= n);
+                sum += x;
+                squares += (double) x * x;
+            }
+            double mean = sum / samples;
+            double variance = squares / samples - mean * mean;
+            double expectedVariance = n * p * (1 - p);
+            assertEquals(n * p, mean, 5 * Math.sqrt(expectedVariance / samples), "mean for n=" + n);
+            assertEquals(expectedVariance, variance, expectedVariance * 0.05, "variance for n=" + n);
+        }
+    }
+
+    @Test
+    void binomial_expectEdgeCases() {
+        var rand = seeded(1);
+        assertEquals(0, DiceSampler.binomial(rand, 0, 0.5));
+        assertEquals(0, DiceSampler.binomial(rand, 10, 0));
+        assertEquals(10, DiceSampler.binomial(rand, 10, 1));
+    }
+
+    @Test
+    void hugePool_expectLongTotalWithinBounds() {
+        var rand = seeded(3);
+        var expression = new Parser().parse(new Lexer().lex("2000000000d6"));
+        long value = expression.evalValue(rand);
+
+        assertTrue(value > Integer.MAX_VALUE);
+        assertTrue(value >= 2000000000L && value <= 12000000000L);
+        assertEquals(12000000000L, expression.eval(rand).max());
+        assertEquals(7000000000.0, value, 6 * Math.sqrt(2000000000 * 35.0 / 12));
+        assertThrows(ArithmeticException.class, () -> expression.evalMany(rand, 1, new int[1]));
+    }
+
+    @Test
+    void largePool_expectExactDistribution() {
+        var rand = seeded(11);
+        var exact = Distribution.dice(60, 6);
+        for (String text : new String[]{"60d6", "Nd6"}) {
+            var program = DiceProgram.compile(text);
+            int[] arguments = program.getPlaceholders().isEmpty() ? new int[0] : new int[]{60};
+            int samples = 40000;
+            double sum = 0;
+            for (int i = 0; i < samples; i++) {
+                long value = program.eval(rand, arguments).value();
+                assertTrue(value >= 60 && value <= 360);
+                sum += value;
+            }
+            assertEquals(exact.mean(), sum / samples, 5 * exact.stddev() / Math.sqrt(samples), text);
+        }
+    }
+
+    @Test
+    void pool_expectExactDistribution() {
+        var rand = seeded(13);
+        for (String text : new String[]{"4d6kh3", "2d20kl1", "100d20kh3", "60d6kl5", "60d6r2dh10", "10d6!", "3d6!kh2", "8d6r1"}) {
+            var program = DiceProgram.compile(text);
+            var exact = program.distribution();
+            int samples = 40000;
+            double sum = 0;
+            for (int i = 0; i < samples; i++) {
+                long value = program.eval(rand).value();
+                assertTrue(value >= exact.min() && value <= exact.max(), text);
+                sum += value;
+            }
+            assertEquals(exact.mean(), sum / samples, 5 * exact.stddev() / Math.sqrt(samples), text);
+        }
+    }
+
+    @Test
+    void successPool_expectBinomialCounts() {
+        var rand = seeded(17);
+        for (String text : new String[]{"10d10>=7", "30d10>7", "100000d6<=2"}) {
+            var program = DiceProgram.compile(text);
+            var exact = program.distribution();
+            int samples = 20000;
+            double sum = 0;
+            for (int i = 0; i < samples; i++) {
+                long value = program.eval(rand).value();
+                assertTrue(value >= exact.min() && value <= exact.max(), text);
+                sum += value;
+            }
+            assertEquals(exact.mean(), sum / samples, 5 * exact.stddev() / Math.sqrt(samples), text);
+        }
+    }
+
+    @Test
+    void pool_expectRerollingEveryFaceRejected() {
+        var modifiers = new DiceModifiers(6, false, DiceModifiers.Selection.ALL, 0);
+        assertThrows(IllegalArgumentException.class, () -> DiceSampler.pool(seeded(1), 4, 6, modifiers));
+        assertEquals(0, DiceSampler.pool(seeded(1), 4, 6, new DiceModifiers(0, true, DiceModifiers.Selection.KEEP_LOWEST, 0)));
+    }
+
+    @Test
+    void aliasTable_expectWeightedFrequencies() {
+        var rand = seeded(5);
+        var table = new AliasTable(new double[]{1, 0, 3, 6});
+        int[] counts = new int[table.size()];
+        int samples = 100000;
+        for (int i = 0; i < samples; i++) {
+            counts[table.sample(rand)]++;
+        }
+        assertEquals(0, counts[1]);
+        assertEquals(0.1, counts[0] / (double) samples, 0.01);
+        assertEquals(0.3, counts[2] / (double) samples, 0.01);
+        assertEquals(0.6, counts[3] / (double) samples, 0.01);
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{0, 0}));
+    }
+
+    private static Parser.DiceExpression.Rand seeded(long seed) {
+        var random = new Random(seed);
+        return max -> random.nextInt(1, max + 1);
+    }
+}
@@ -0,0 +1,137 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistributionTest {
+
+    @Test
+    void singleDie_expectUniform() {
+        var d6 = distribution("1d6");
+        assertEquals(1, d6.min());
+        assertEquals(6, d6.max());
+        for (int i = 1; i <= 6; i++) {
+            assertEquals(1.0 / 6, d6.probability(i), 1e-12);
+        }
+        assertEquals(3.5, d6.mean(), 1e-12);
+    }
+
+    @Test
+    void threeDice_expectKnownCounts() {
+        var d = distribution("3d6");
+        assertEquals(3, d.min());
+        assertEquals(18, d.max());
+        assertEquals(27.0 / 216, d.probability(10), 1e-12);
+        assertEquals(1.0 / 216, d.probability(18), 1e-12);
+        assertEquals(Math.sqrt(35.0 / 4), d.stddev(), 1e-9);
+        assertEquals(10, d.percentile(0.5));
+        assertEquals(3, d.percentile(0));
+        assertEquals(18, d.percentile(1));
+    }
+
+    @Test
+    void combinators_expectShiftedAndNegated() {
+        var plus = distribution("+ 8d10 4");
+        assertEquals(12, plus.min());
+        assertEquals(84, plus.max());
+        assertEquals(48, plus.mean(), 1e-9);
+
+        var minus = distribution("- 1d4 1d4");
+        assertEquals(-3, minus.min());
+        assertEquals(3, minus.max());
+        assertEquals(4.0 / 16, minus.probability(0), 1e-12);
+
+        assertEquals(0, distribution("+ 1d6").mean(), 1e-12);
+        assertEquals(0, distribution("").mean(), 1e-12);
+    }
+
+    @Test
+    void largePool_expectFastAndNormalised() {
+        var d = distribution("1000d6");
+        assertEquals(3500, d.mean(), 1e-6);
+        assertEquals(1000 * 35.0 / 12, d.variance(), 1e-4);
+    }
+
+    @Test
+    void compare_expectStrictlyGreaterProbability() {
+        assertEquals(15.0 / 36, distribution("1d6").probabilityGreaterThan(distribution("1d6")), 1e-12);
+        assertEquals(1.0, distribution("7").probabilityGreaterThan(distribution("1d6")), 1e-12);
+    }
+
+    @Test
+    void keepAndDrop_expectOrderStatistics() {
+        var d = compiled("4d6kh3");
+        assertEquals(3, d.min());
+        assertEquals(18, d.max());
+        assertEquals(12.2446, d.mean(), 1e-4);
+        assertEquals(21.0 / 1296, d.probability(18), 1e-12);
+        assertEquals(d.mean(), compiled("4d6dl1").mean(), 1e-12);
+
+        var advantage = compiled("2d20kh1");
+        assertEquals(13.825, advantage.mean(), 1e-9);
+        assertEquals(39.0 / 400, advantage.probability(20), 1e-12);
+        assertEquals(7.175, compiled("2d20kl1").mean(), 1e-9);
+        assertEquals(1, compiled("100d20kh3").probabilityAbove(2), 1e-9);
+    }
+
+    @Test
+    void explodeAndReroll_expectShiftedFaces() {
+        var exploding = compiled("1d6!");
+        assertEquals(0, exploding.probability(6), 1e-12);
+        assertEquals(1.0 / 36, exploding.probability(7), 1e-12);
+        assertEquals(3.5 * 6 / 5, exploding.mean(), 1e-9);
+        assertEquals(21, compiled("1d1!").mean(), 1e-12);
+
+        var rerolled = compiled("1d6r1");
+        assertEquals(2, rerolled.min());
+        assertEquals(0.2, rerolled.probability(2), 1e-12);
+        assertEquals(1, compiled("3d6!kh2").probabilityAbove(1), 1e-9);
+    }
+
+    @Test
+    void successPool_expectBinomialOdds() {
+        var pool = compiled("10d10>=7");
+        assertEquals(0, pool.min());
+        assertEquals(10, pool.max());
+        assertEquals(4, pool.mean(), 1e-12);
+        assertEquals(Math.pow(0.6, 10), pool.probability(0), 1e-15);
+        assertEquals(1 - Math.pow(0.6, 10), pool.probabilityAtLeast(1), 1e-12);
+        assertEquals(1, pool.probabilityAtLeast(0), 1e-12);
+        assertEquals(0, pool.probabilityAtLeast(11), 1e-12);
+
+        var large = Distribution.successes(100000, 0.3);
+        assertEquals(30000, large.mean(), 1e-4);
+        assertEquals(0.5, large.probabilityAtLeast(30000), 0.01);
+        assertEquals(1.0 / 6, compiled("1d6=6").probability(1), 1e-12);
+        assertEquals(1, compiled("3d6>6").probability(0), 1e-12);
+    }
+
+    @Test
+    void productsAndQuotients_expectEveryPairCombined() {
+        var product = compiled("1d2 * 1d2");
+        assertEquals(0.25, product.probability(1), 1e-12);
+        assertEquals(0.5, product.probability(2), 1e-12);
+        assertEquals(0, product.probability(3), 1e-12);
+        assertEquals(0.25, product.probability(4), 1e-12);
+
+        var halved = compiled("1d6 / 2");
+        assertEquals(1.0 / 6, halved.probability(0), 1e-12);
+        assertEquals(1.0 / 6, halved.probability(3), 1e-12);
+        assertEquals(-3.5, compiled("-d6").mean(), 1e-12);
+        assertThrows(IllegalArgumentException.class, () -> compiled("1d6 / (1d2 - 1)"));
+    }
+
+    @Test
+    void tooLarge_expectIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> distribution("100000d100"));
+    }
+
+    private static Distribution compiled(String expression) {
+        return DiceProgram.compile(expression).distribution();
+    }
+
+    private static Distribution distribution(String expression) {
+        return Distribution.of(new Parser().parse(new Lexer().lex(expression)));
+    }
+}
@@ -87,6 +87,15 @@ class LexerTest {
         ), lex("1d6-3"));
     }
 
+    @Test
+    void letter_expectNameToken() {
+        assertEquals(tokens(
+                t(Type.NAME, "N"),
+                t(Type.D, "D"),
+                t(Type.DIGITS, "6")
+        ), lex("Nd6"));
+    }
+
     @Test
     void minusAlone_expectMinusToken() {
         assertEquals(tokens(t(Type.MINUS, "-")), lex("-"));
@@ -0,0 +1,95 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NormalizerTest {
+
+    @Test
+    void likeDice_expectMergedAndConstantsFolded() {
+        var sum = normalize("+ 3d6 2d6 5 1");
+        assertEquals(6, sum.getConstant());
+        assertEquals(1, sum.getAdded().size());
+        assertEquals("+ 5d6 6", Normalizer.canonical(sum));
+        assertEquals("+ 5D6(30) 6", sum.eval(max -> max).description());
+    }
+
+    @Test
+    void equivalentSpellings_expectSameCanonicalText() {
+        assertEquals("+ 1d8 3d6 - 2 1d4", canonical("+ 1d6 - 1d8 1d4 -2 - 0 2d6"));
+        assertEquals("+ 1d8 3d6 - 2 1d4", canonical("+ 1d8 2 1d6 - 2d6 1d4"));
+        assertEquals("- 1d4 1d4", canonical("- 1d4 1d4"));
+        assertEquals("- 0 1d6", canonical("- 0 1d6"));
+        assertEquals("-5", canonical("- 1 1 5"));
+        assertEquals("+ 1d8 - 3d6 1d4 2", canonical("+ 2d6 1d6 1d8 - 0 1d4 2"));
+        assertEquals("0", canonical("+ 1d6"));
+        assertEquals("0", canonical(""));
+        assertEquals("+ 4d6kh3 4d6kh3 1", canonical("+ 1 4d6kh3 4D6KH3"));
+        assertEquals("+ 2d6 Nd6 M", canonical("+ Nd6 2d6 M"));
+    }
+
+    @Test
+    void infix_expectFlattenedAndWrittenInfix() {
+        assertEquals("5d6 + 6", canonical("3d6 + 5 + 2d6 + 1"));
+        assertEquals("3d6 + 1d4 - 1d8 - 6", canonical("1d6 - (1d8 - 1d4 + 2) + 2d6 - 4"));
+        assertEquals("-1d6", canonical("-d6"));
+        assertEquals("14", canonical("2 + 3 * 4"));
+        assertEquals("(2d6 + 3) * 2", canonical("(3 + 2d6) * (4 / 2)"));
+        assertEquals("1d4 * -1 / (1d6 - 1)", canonical("1d4 * -1 / (1d6 - 1)"));
+        assertThrows(IllegalArgumentException.class, () -> canonical("1d6 + 6 / (3 - 3)"));
+    }
+
+    @Test
+    void bounds_expectPrecomputedAndExactForSubtraction() {
+        var sum = normalize("- 1d4 1d6 2");
+        assertEquals(-7, sum.min(Parser.DiceExpression.NO_ARGUMENTS));
+        assertEquals(1, sum.max(Parser.DiceExpression.NO_ARGUMENTS));
+
+        var placeholders = new java.util.ArrayList<String>();
+        var withPlaceholder = Normalizer.normalize(new Compiler().compile("+ Nd6 3", placeholders));
+        assertEquals(List.of("N"), placeholders);
+        assertEquals(5, withPlaceholder.min(new int[]{2}));
+        assertEquals(15, withPlaceholder.max(new int[]{2}));
+    }
+
+    @Test
+    void normalised_expectSameDistribution() {
+        for (String text : new String[]{"+ 3d6 2d6 5 1", "- 2d8 + 1d8 3 1d4", "+ 2d20kh1 1d4 - 1d4 1", "(1d6 - 2) * (3 - 1d4) / 2"}) {
+            var written = Distribution.of(new Compiler().compile(text));
+            var normalised = Distribution.of(normalize(text));
+            assertEquals(written.min(), normalised.min(), text);
+            assertEquals(written.max(), normalised.max(), text);
+            for (int value = written.min(); value <= written.max(); value++) {
+                assertEquals(written.probability(value), normalised.probability(value), 1e-12, text);
+            }
+        }
+    }
+
+    @Test
+    void evalMany_expectOneGroupPerDieSize() {
+        var program = DiceProgram.compile("+ 2d1 3d1 - 4 1d1");
+        int[] out = new int[3];
+        program.evalMany(max -> max, out.length, out);
+        assertArrayEquals(new int[]{8, 8, 8}, out);
+        assertEquals("+ 5D1(5) - 4 1D1(1)", program.eval(max -> max).description());
+    }
+
+    @Test
+    void mean_expectFromTermsEvenForHugePools() {
+        assertEquals(350003, DiceProgram.compile("+ 100000d6 3 - 0 0").mean(), 1e-6);
+        assertEquals(12.2446, DiceProgram.compile("4d6kh3").mean(), 1e-4);
+        assertEquals(8.4, DiceProgram.compile("2d6!").mean(), 1e-9);
+        assertThrows(IllegalStateException.class, () -> DiceProgram.compile("Nd6").mean());
+    }
+
+    private static Parser.Sum normalize(String text) {
+        return Normalizer.normalize(new Compiler().compile(text));
+    }
+
+    private static String canonical(String text) {
+        return Normalizer.canonical(normalize(text));
+    }
+}
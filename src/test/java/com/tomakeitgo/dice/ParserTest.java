@@ -42,6 +42,57 @@ class ParserTest {
         assertEquals("- 1D4(4) 1D4(4)", parseAndEval("- 1D4 1D4").description());
     }
 
+    @Test
+    void testTokensAreReadInThePrefixGrammar() {
+        var tokens = new Lexer().lex("-1d6");
+        assertEquals(0, new Parser().parse(tokens).eval(max -> max).value());
+        assertEquals(-6, new Compiler().compile("-1d6").eval(max -> max).value());
+        assertEquals("3D6(18)", parseAndEval("3d6 + 2").description());
+        assertEquals(-2, parseAndEval("-2 5").value());
+    }
+
+    @Test
+    void testPlaceholders() {
+        var placeholders = new java.util.ArrayList<String>();
+        var expression = new Parser().parse(new Lexer().lex("+ Nd6 M N"), placeholders);
+
+        assertEquals(java.util.List.of("N", "M"), placeholders);
+        var result = expression.eval(max -> max, new int[]{3, 5});
+        assertEquals(26, result.value());
+        assertEquals("+ 3D6(18) 5 3", result.description());
+        assertThrows(IllegalArgumentException.class, () -> expression.eval(max -> max));
+    }
+
+    @Test
+    void testEvalMany() {
+        int[] out = new int[2000];
+        new Parser().parse(new Lexer().lex("- 3d6 1 1d4")).evalMany(max -> max, out.length, out);
+        for (int value : out) {
+            assertEquals(13, value);
+        }
+
+        var counter = new int[]{0};
+        new Parser().parse(new Lexer().lex("2d6")).evalMany(max -> ++counter[0] % max + 1, 3, out);
+        assertEquals(21, out[0] + out[1] + out[2]);
+        assertEquals(6, counter[0]);
+    }
+
+    @Test
+    void testDescriptionIsBuiltFromTheRollItDescribes() {
+        var counter = new int[]{0};
+        var expression = new Parser().parse(new Lexer().lex("+ 2d6 Nd4 1"));
+        var result = expression.eval(max -> ++counter[0], new int[]{2});
+
+        assertEquals(4, counter[0]);
+        assertEquals(11, result.value());
+        assertEquals("+ 2D6(3) 2D4(7) 1", result.description());
+        assertEquals(4, counter[0]);
+        assertEquals(5, result.min());
+        assertEquals(21, result.max());
+
+        assertEquals(-1, new Parser().parse(new Lexer().lex("- 1d4 1d4 1")).evalValue(max -> max));
+    }
+
     private static Parser.DiceExpression.Result parseAndEval(String expression) {
         var result = new Parser().parse(new Lexer().lex(expression));
         return result.eval(max -> max);
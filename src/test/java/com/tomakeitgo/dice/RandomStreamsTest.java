@@ -0,0 +1,53 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RandomStreamsTest {
+
+    @Test
+    void sameSeed_expectSameRolls() {
+        var first = new RandomStreams(RandomStreams.DEFAULT_ALGORITHM, 42);
+        var second = new RandomStreams(RandomStreams.DEFAULT_ALGORITHM, 42);
+        assertArrayEquals(rolls(first), rolls(second));
+
+        first.seed(7);
+        var expected = rolls(first);
+        first.seed(7);
+        assertArrayEquals(expected, rolls(first));
+    }
+
+    @Test
+    void otherThread_expectIndependentStream() throws InterruptedException {
+        var streams = new RandomStreams(RandomStreams.DEFAULT_ALGORITHM, 42);
+        var mine = streams.current();
+        var theirs = new AtomicReference<Parser.DiceExpression.Rand>();
+        var thread = new Thread(() -> theirs.set(streams.current()));
+        thread.start();
+        thread.join();
+
+        assertNotSame(mine, theirs.get());
+        assertSame(mine, streams.current());
+    }
+
+    @Test
+    void algorithms_expectConfigurable() {
+        var streams = new RandomStreams("SplittableRandom", 1);
+        assertEquals("SplittableRandom", streams.getAlgorithm());
+        streams.seed("Random", 1);
+        assertEquals("Random", streams.getAlgorithm());
+        for (int value : rolls(streams)) {
+            assertTrue(value >= 1 && value <= 6);
+        }
+        assertThrows(IllegalArgumentException.class, () -> streams.seed("NotAnAlgorithm", 1));
+    }
+
+    private static int[] rolls(RandomStreams streams) {
+        int[] values = new int[32];
+        streams.current().fill(values, 6);
+        return values;
+    }
+}
@@ -0,0 +1,96 @@
+package com.tomakeitgo.dice;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationTest {
+
+    @Test
+    void manyRolls_expectCloseToExactDistribution() {
+        var program = DiceProgram.compile("3d6");
+        var exact = program.distribution();
+        var simulation = Simulation.run(program, 200000, new RandomStreams(RandomStreams.DEFAULT_ALGORITHM, 1));
+
+        assertEquals(200000, simulation.rolls());
+        assertEquals(3, simulation.min());
+        assertEquals(18, simulation.max());
+        assertEquals(exact.mean(), simulation.mean(), 0.05);
+        assertEquals(exact.variance(), simulation.variance(), 0.2);
+        assertEquals(10, simulation.percentile(0.5), 1);
+
+        long total = 0;
+        for (long[] bucket : simulation.histogram()) {
+            total += bucket[1];
+            assertEquals(exact.probability((int) bucket[0]), bucket[1] / 200000.0, 0.01);
+        }
+        assertEquals(200000, total);
+    }
+
+    @Test
+    void sameSeed_expectSameHistogram() {
+        var program = DiceProgram.compile("- 2d10 Nd4");
+        var first = Simulation.run(program, 100000, new RandomStreams(RandomStreams.DEFAULT_ALGORITHM, 9), 3);
+        var second = Simulation.run(program, 100000, new RandomStreams(RandomStreams.DEFAULT_ALGORITHM, 9), 3);
+
+        assertEquals(first.histogram().size(), second.histogram().size());
+        for (long value = first.min(); value <= first.max(); value++) {
+            assertEquals(first.frequency(value), second.frequency(value));
+        }
+        assertTrue(first.min() >= 2 - 12 && first.max() <= 20 - 3);
+    }
+
+    @Test
+    void invalidRolls_expectIllegalArgument() {
+        var program = DiceProgram.compile("1d6");
+        assertThrows(IllegalArgumentException.class, () -> Simulation.run(program, 0, new RandomStreams()));
+        assertThrows(IllegalArgumentException.class, () -> Simulation.run(program, 10, new RandomStreams(), 1));
+    }
+
+    @Test
+    void failingRoll_expectWorkerExceptionItself() {
+        var sides = DiceProgram.compile("NdS");
+        var error = assertThrows(IllegalArgumentException.class, () -> Simulation.run(sides, 100_000, new RandomStreams(), 2, 0));
+        assertEquals("bound must be positive", error.getMessage());
+
+        var divide = DiceProgram.compile("1d6 / (1d2 - 1)");
+        assertThrows(ArithmeticException.class, () -> Simulation.run(divide, 100_000, new RandomStreams()));
+    }
+
+    @Test
+    void interrupted_expectCancelledAndWorkersStopped() {
+        var program = DiceProgram.compile("100d100");
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(CancellationException.class, () -> Simulation.run(program, Long.MAX_VALUE / 2, new RandomStreams()));
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void interruptedWhileRunning_expectCancelled() throws InterruptedException {
+        var program = DiceProgram.compile("100d100");
+        var thrown = new Throwable[1];
+        var caller = new Thread(() -> {
+            try {
+                Simulation.run(program, Long.MAX_VALUE / 2, new RandomStreams());
+            } catch (Throwable e) {
+                thrown[0] = e;
+            }
+        });
+        caller.start();
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(10_000);
+
+        assertFalse(caller.isAlive());
+        assertInstanceOf(CancellationException.class, thrown[0]);
+        assertTrue(ForkJoinPool.commonPool().awaitQuiescence(10, TimeUnit.SECONDS));
+    }
+}
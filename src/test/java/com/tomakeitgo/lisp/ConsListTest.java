@@ -0,0 +1,50 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.SNumber;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConsListTest {
+
+    @Test
+    void cons_expectSharedRest() {
+        List<SExpression> rest = PersistentVector.of(List.of(SNumber.of(3), SNumber.of(4)));
+        var list = ConsList.cons(SNumber.of(1), ConsList.cons(SNumber.of(2), rest));
+        assertEquals(List.of(SNumber.of(1), SNumber.of(2), SNumber.of(3), SNumber.of(4)), list);
+        assertEquals(4, list.size());
+        assertEquals(SNumber.of(3), list.get(2));
+        assertSame(rest, ((ConsList) list.rest()).rest());
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(4));
+    }
+
+    @Test
+    void longList_expectLinearIterationAndEquality() {
+        List<SExpression> list = List.of();
+        var expected = new ArrayList<SExpression>();
+        for (int i = 99_999; i >= 0; i--) {
+            list = ConsList.cons(SNumber.of(i), list);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            expected.add(SNumber.of(i));
+        }
+        assertEquals(expected, list);
+        assertEquals(expected.hashCode(), list.hashCode());
+    }
+
+    @Test
+    void listIterator_expectBothDirections() {
+        var list = ConsList.cons(SNumber.of(1), ConsList.cons(SNumber.of(2), List.of(SNumber.of(3))));
+        var iterator = list.listIterator(1);
+        assertEquals(SNumber.of(2), iterator.next());
+        assertEquals(SNumber.of(3), iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(SNumber.of(3), iterator.previous());
+        assertEquals(SNumber.of(2), iterator.previous());
+        assertEquals(1, iterator.nextIndex());
+        assertThrows(UnsupportedOperationException.class, () -> iterator.set(SNumber.of(0)));
+    }
+}
@@ -1,14 +1,20 @@
 package com.tomakeitgo.lisp;
 
+import com.tomakeitgo.dice.RandomStreams;
 import com.tomakeitgo.lisp.SExpression.*;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -18,12 +24,12 @@ class InterpreterTest {
 
     @ParameterizedTest
     @MethodSource("testInterpreterInputs")
-    void testInterpreter(SExpression expected, String input) {
-        assertEquals(expected, eval(input));
+    void testInterpreter(SExpression expected, String input, Interpreter.Engine engine) {
+        assertEquals(expected, eval(input, engine));
     }
 
     static Stream<Arguments> testInterpreterInputs() {
-        return Stream.of(
+        return onEachEngine(Stream.of(
                 // self evaluations
                 of(new SNumber(new BigDecimal("42")), "42"),
                 of(new SText("hello"), "'hello'"),
@@ -106,6 +112,13 @@ class InterpreterTest {
                 of(new SNumber(new BigDecimal("5")), "(def add (lambda (a b) (number/add a b))) (add 2 3)"),
                 of(new SNumber(new BigDecimal("10")), "(def y 10) (def getY (lambda () y)) (getY)"),
                 of(new SNumber(new BigDecimal("0")), "(def countdown (lambda (n) (if (isEqual n 0 ) 0 (countdown (number/sub n 1 )) ))) (countdown 5)"),
+                of(new SNumber(new BigDecimal("3")), "(def adder (lambda (a) (lambda (b) (number/add a b)))) ((adder 1) 2)"),
+                of(new SNumber(new BigDecimal("5")), "(def f (lambda (x) (def x 5) x)) (f 1)"),
+                of(new SAtom("local"), "(def f (lambda (x) (def local x) local)) (f 1) local"),
+                of(new SNumber(2), "(def f (lambda (x) (def y (number/add x 1)) ((lambda (z) y) 0))) (f 1)"),
+                of(new SNumber(new BigDecimal("2")), "(def f (lambda (x x) x)) (f 1 2)"),
+                of(new SNumber(new BigDecimal("1")), "(def fn lambda) (def k (fn (x) (fn (y) x))) ((k 1) 2)"),
+                of(new SList(List.of(new SNumber(new BigDecimal("1")), new SNumber(new BigDecimal("2")), new SNumber(new BigDecimal("3")))), "(def f (lambda (if) (if 1 2 3))) (f list)"),
 
                 // lambda with argument list
                 of(new SNumber(new BigDecimal("1")), "(def first (lambda args (list/first args))) (first 1 2 3)"),
@@ -149,6 +162,10 @@ class InterpreterTest {
                         new SNumber(new BigDecimal("3"))
                 )), "(list/rest (list/append () 1 2 3))"),
                 of(new SList(List.of()), "(list/rest (list/append () 1))"),
+                of(new SList(List.of(new SNumber(1), new SNumber(2), new SNumber(3), new SNumber(4))), "(list/prepend (list/append () 3 4) 1 2)"),
+                of(new SList(List.of(new SNumber(3), new SNumber(4), new SNumber(5))), "(list/append (list/rest (list/rest (list/prepend (list 3 4) 1 2))) 5)"),
+                of(new SList(List.of(new SNumber(0), new SNumber(2))), "(list/prepend (list/rest (list/append (list 1) 2)) 0)"),
+                of(new SNumber(3), "(list/nth (list/prepend (list/append () 2 3) 1) 2)"),
 
                 // list/nth
                 of(new SNumber(new BigDecimal("1")), "(list/nth (list 1 2 3) 0)"),
@@ -177,6 +194,68 @@ class InterpreterTest {
                 of(Interpreter.FALSE, "(or false false false)"),
                 of(new SError("or requires at least two arguments"), "(or true)"),
 
+                // roll
+                of(new SNumber(new BigDecimal("3")), "(list/first (roll '3d1'))"),
+                of(new SNumber(new BigDecimal("5")), "(list/first (roll '+ Nd1 M' 2 3))"),
+                of(new SText("+ 2D1(2) 3: 5"), "(list/nth (roll '+ Nd1 M' 2 3) 1)"),
+                of(new SList(List.of(new SNumber(5), new SText("+ 2D1(2) 3: 5"), new SNumber(5), new SNumber(5))), "(roll '+ 2d1 3')"),
+                of(new SText("+ 3D1(3) 2: 5"), "(list/nth (roll '+ 2d1 1 1d1 1') 1)"),
+                of(new SText("3D1(3) * 2 + 1: 7"), "(list/nth (roll '3d1*2+1') 1)"),
+                of(new SNumber(new BigDecimal("-2")), "(list/first (roll '(1d1 - 3) * (4 / 2) / -(-2)'))"),
+                of(new SError("Cannot divide by zero"), "(roll '1d1 / (1 - 1)')"),
+                of(new SNumber(new BigDecimal("7")), "(def r (roll/compile '+ Nd1 M')) (r 1 2) (list/first (r 3 4))"),
+                of(new SError("roll expects 2 numbers for [N, M]"), "((roll/compile '+ Nd1 M') 1)"),
+                of(new SError("roll/compile requires exactly one argument of type text"), "(roll/compile 1)"),
+                of(new SList(List.of(new SNumber(2), new SNumber(2), new SNumber(2))), "(roll/many '2d1' 3)"),
+                of(new SList(List.of(new SNumber(7))), "(list/rest (roll/many '+ Nd1 4' 2 3))"),
+                of(new SError("roll/many requires a text dice expression and a number of rolls"), "(roll/many '2d1')"),
+
+                // roll distributions
+                of(new SNumber(new BigDecimal("10.5")), "(roll/mean '3d6')"),
+                of(new SNumber(new BigDecimal("3500000")), "(roll/mean '1000000d6')"),
+                of(new SNumber(new BigDecimal("3500003")), "(roll/mean '+ 1000000d6 3')"),
+                of(new SNumber(new BigDecimal("10")), "(roll/percentile '3d6' 50)"),
+                of(new SNumber(new BigDecimal("0.75")), "(roll/atLeast '2d6>=4' 1)"),
+
+                // weighted tables
+                of(new SText("only"), "(table/roll (table/define 1 'only' 0 'never'))"),
+                of(new SText("ruby"), "(def gems (table/define 0 'quartz' 2 'ruby')) (table/roll (table/define 0 'copper' 1 gems))"),
+                of(new SList(List.of(new SText("a"), new SText("a"))), "((table/define (list (list 1 'a'))) 2)"),
+                of(new SList(List.of()), "(table/roll (table/define 1 'a') 0)"),
+                of(Interpreter.TRUE, "(type/isTable (table/define 1 'a'))"),
+                of(new SError("At least one weight must be positive"), "(table/define 0 'a')"),
+                of(new SNumber(new BigDecimal("2")), "(list/first (roll '2d6>=1'))"),
+                of(new SList(List.of(
+                        new SList(List.of(new SNumber(1), new SNumber(new BigDecimal("0.5")))),
+                        new SList(List.of(new SNumber(2), new SNumber(new BigDecimal("0.5"))))
+                )), "(roll/dist '1d2')"),
+                of(new SList(List.of(
+                        new SNumber(new BigDecimal("0.25")),
+                        new SNumber(new BigDecimal("0.5")),
+                        new SNumber(new BigDecimal("0.25"))
+                )), "(roll/compare '1d2' '1d2')"),
+                of(new SList(List.of(
+                        new SList(List.of(new SAtom("rolls"), new SNumber(3))),
+                        new SList(List.of(new SAtom("mean"), new SNumber(2))),
+                        new SList(List.of(new SAtom("variance"), new SNumber(0))),
+                        new SList(List.of(new SAtom("min"), new SNumber(2))),
+                        new SList(List.of(new SAtom("max"), new SNumber(2))),
+                        new SList(List.of(new SAtom("percentiles"), new SList(List.of(
+                                new SList(List.of(new SNumber(1), new SNumber(2))),
+                                new SList(List.of(new SNumber(5), new SNumber(2))),
+                                new SList(List.of(new SNumber(25), new SNumber(2))),
+                                new SList(List.of(new SNumber(50), new SNumber(2))),
+                                new SList(List.of(new SNumber(75), new SNumber(2))),
+                                new SList(List.of(new SNumber(95), new SNumber(2))),
+                                new SList(List.of(new SNumber(99), new SNumber(2)))
+                        )))),
+                        new SList(List.of(new SAtom("histogram"), new SList(List.of(
+                                new SList(List.of(new SNumber(2), new SNumber(3)))
+                        ))))
+                )), "(roll/simulate '2d1' 3)"),
+                of(new SError("Cannot divide by zero"), "(roll/simulate '1d6 / (1d2 - 1)' 100000)"),
+                of(new SError("roll/percentile requires a text dice expression and a number between 0 and 100"), "(roll/percentile '3d6' 101)"),
+
                 // list/contains
                 of(Interpreter.TRUE, "(list/contains (list 1 2 3) 2)"),
                 of(Interpreter.FALSE, "(list/contains (list 1 2 3) 5)"),
@@ -184,19 +263,51 @@ class InterpreterTest {
                 of(Interpreter.TRUE, "(list/contains (list 'a' 'b') 'a')"),
                 of(new SError("list/contains requires a list as the first argument"), "(list/contains 42 1)"),
                 of(new SError("list/contains requires exactly two arguments"), "(list/contains (list 1))"),
-                of(new SError("list/contains requires exactly two arguments"), "(list/contains (list 1) 1 2)")
-        );
+                of(new SError("list/contains requires exactly two arguments"), "(list/contains (list 1) 1 2)"),
+
+                // maps and sets
+                of(new SText("gold"), "(map/get (map/of 'loot' 'gold' 'xp' 10) 'loot')"),
+                of(new SNumber(3), "(map/get (map/of (list (list 1 2) (list 1 3))) 1)"),
+                of(new SNumber(0), "(map/get (map/of) 'missing' 0)"),
+                of(new SError("map/get found no value for 'missing'"), "(map/get (map/of) 'missing')"),
+                of(new SNumber(2), "(def m (map/of 'a' 1)) (map/get (map/put m 'a' 2 'b' 3) 'a')"),
+                of(new SNumber(1), "(def m (map/of 'a' 1)) (map/put m 'a' 2) (map/get m 'a')"),
+                of(Interpreter.FALSE, "(map/contains (map/remove (map/of 'a' 1 'b' 2) 'a') 'a')"),
+                of(Interpreter.TRUE, "(map/contains (map/of (list 1 2) 'pair') (list/append (list 1) 2))"),
+                of(new SNumber(2), "(map/size (map/of 'a' 1 'b' 2 'a' 3))"),
+                of(new SList(List.of(new SText("a"))), "(map/keys (map/of 'a' 1))"),
+                of(new SList(List.of(new SNumber(1))), "(map/values (map/of 'a' 1))"),
+                of(new SList(List.of(new SList(List.of(new SText("a"), new SNumber(1))))), "(map/entries (map/of 'a' 1))"),
+                of(Interpreter.TRUE, "(isEqual (map/of 'a' 1 'b' 2) (map/put (map/of 'b' 2) 'a' 1))"),
+                of(Interpreter.FALSE, "(isEqual (map/of 'a' 1) (map/of 'a' 2))"),
+                of(Interpreter.TRUE, "(type/isMap (map/of))"),
+                of(Interpreter.FALSE, "(type/isMap (list))"),
+                of(new SError("map/of requires key and value pairs"), "(map/of 'a')"),
+                of(new SError("map/size requires exactly one argument of type map"), "(map/size (set/of))"),
+                of(Interpreter.TRUE, "(set/contains (set/of 1 2 3) 2)"),
+                of(Interpreter.FALSE, "(set/contains (set/remove (set/of 1 2 3) 2) 2)"),
+                of(new SNumber(2), "(set/size (set/add (set/of 1) 2 1))"),
+                of(new SList(List.of(new SText("a"))), "(set/toList (set/of 'a' 'a'))"),
+                of(Interpreter.TRUE, "(isEqual (set/of 1 2) (set/add (set/of 2) 1))"),
+                of(Interpreter.TRUE, "(map/contains (map/of (set/of 1 2) 'x') (set/of 2 1))"),
+                of(Interpreter.TRUE, "(type/isSet (set/of))"),
+                of(new SError("set/add requires a set followed by values"), "(set/add (list) 1)"),
+                // special forms stay rebindable
+                of(new SNumber(new BigDecimal("2")), "(def if (lambda (a b c) b)) (if false 2 3)"),
+                of(new SNumber(new BigDecimal("5")), "(def f (lambda (x) (if x 4 5))) (f true) (def if (lambda (a b c) c)) (f true)"),
+                of(new SList(List.of(new SAtom("cond"), new SNumber(new BigDecimal("1")))), "(def cond 7) (cond 1)")
+        ));
     }
 
 
     @ParameterizedTest
     @MethodSource("errorCasesInputs")
-    void errorCases(String input) {
-        assertInstanceOf(SError.class, eval(input));
+    void errorCases(String input, Interpreter.Engine engine) {
+        assertInstanceOf(SError.class, eval(input, engine));
     }
 
     static Stream<Arguments> errorCasesInputs() {
-        return Stream.of(
+        return onEachEngine(Stream.of(
                 of("(number/add 'a' 1)"),
                 of("(number/add 1)"),
                 of("(number/mul 'a' 1)"),
@@ -226,13 +337,23 @@ class InterpreterTest {
                 of("(list/rest ())"),
                 of("(list/rest 42)"),
                 of("(list/rest)"),
-                of("(list/rest (list/append () 1) (list/append () 2))")
-        );
+                of("(list/rest (list/append () 1) (list/append () 2))"),
+                of("(table/define 1)"),
+                of("(table/define 'a' 1)"),
+                of("(table/define -1 'a' 2 'b')"),
+                of("(table/roll 'a')"),
+                of("(table/roll (table/define 1 'a') -1)"),
+                of("(eval/with-budget 10 (number/add 1 2))"),
+                of("(eval/with-budget -1 10 (number/add 1 2))"),
+                of("(eval/with-budget 10 'ms' (number/add 1 2))"),
+                of("(eval/with-budget 1.5 10 (number/add 1 2))")
+        ));
     }
 
-    @Test
-    void helpReturnsText() {
-        var result = eval("(help)");
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void helpReturnsText(Interpreter.Engine engine) {
+        var result = eval("(help)", engine);
         assertInstanceOf(SText.class, result);
         var text = ((SText) result).value();
         assertTrue(text.contains("if"));
@@ -242,11 +363,153 @@ class InterpreterTest {
         assertTrue(text.contains("help"));
     }
 
-    private static SExpression eval(String input) {
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void rollSeed_expectRepeatableRolls(Interpreter.Engine engine) {
+        var program = "(roll/seed 42) (roll/many '3d6' 20)";
+        assertEquals(eval(program, engine), eval(program, engine));
+        assertEquals(new SText("SplittableRandom"), eval("(roll/seed 1 'SplittableRandom')", engine));
+        assertInstanceOf(SError.class, eval("(roll/seed 1 'NotAnAlgorithm')", engine));
+        assertInstanceOf(SError.class, eval("(roll/seed 1.5)", engine));
+        assertInstanceOf(SError.class, eval("(roll/seed 9223372036854775808)", engine));
+        assertEquals(new SText("SplittableRandom"), eval("(roll/seed -9223372036854775808 'SplittableRandom')", engine));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void tableRoll_expectDrawsInProportionToWeights(Interpreter.Engine engine) {
+        var draws = assertInstanceOf(SList.class, eval("(roll/seed 7) (table/roll (table/define 3 'common' 1 'rare') 4000)", engine));
+        long common = draws.value().stream().filter(new SText("common")::equals).count();
+        assertEquals(3000, common, 100);
+        assertEquals(draws, eval("(roll/seed 7) (table/roll (table/define 3 'common' 1 'rare') 4000)", engine));
+    }
+
+    // Filling the map is a loop only the compiled engine runs without growing the stack.
+    @Test
+    void maps_expectLookupsAcrossManyEntries() {
+        var engine = Interpreter.Engine.COMPILED;
+        var program = "(def fill (lambda (m n) (if (isEqual n 0) m (fill (map/put m n (number/mul n n)) (number/sub n 1)))))"
+                + " (def squares (fill (map/of) 10000))";
+        assertEquals(new SNumber(10000), eval(program + " (map/size squares)", engine));
+        assertEquals(new SNumber(49_000_000), eval(program + " (map/get squares 7000)", engine));
+        assertEquals(Interpreter.FALSE, eval(program + " (map/contains (map/remove squares 1) 1)", engine));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void interrupted_expectEvaluationCancelled(Interpreter.Engine engine) {
+        Thread.currentThread().interrupt();
+        assertThrows(CancellationException.class, () -> eval("(def f (lambda (n) n)) (f 1)", engine));
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(new SNumber(1), eval("(def f (lambda (n) n)) (f 1)", engine));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void interrupted_expectLongBuiltinsCancelled(Interpreter.Engine engine) {
+        for (var program : List.of("(roll/many '1d6' 1000000)", "(table/roll (table/define 1 'a' 1 'b') 1000000)")) {
+            Thread.currentThread().interrupt();
+            assertThrows(CancellationException.class, () -> eval(program, engine));
+            assertFalse(Thread.currentThread().isInterrupted());
+        }
+        assertEquals(new SNumber(1), eval("(list/nth (roll/many '1' 1000000) 999999)", engine));
+        assertEquals(new SError("Evaluation ran out of time"), eval("(eval/with-budget 1000 0 (roll/many '1d6' 1000000))", engine));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void withBudget_expectStepsCounted(Interpreter.Engine engine) {
+        var spin = "(def spin (lambda (n) (spin n))) ";
+        assertEquals(new SNumber(3), eval("(eval/with-budget 0 0 (number/add 1 2))", engine));
+        assertEquals(new SNumber(3), eval("(def f (lambda (n) n)) (eval/with-budget 1 1000 (f 3))", engine));
+        assertEquals(new SError("Evaluation ran out of steps"), eval(spin + "(eval/with-budget 500 60000 (spin 0))", engine));
+        // The call that runs out is the 51st, and what the first 50 defined is kept.
+        assertEquals(new SNumber(50), eval("(def count 0) (def f (lambda (n) (def count n) (f (number/add n 1))))"
+                + " (eval/with-budget 50 60000 (f 1)) count", engine));
+        // What an inner budget uses is charged to the outer one, and it can never have more than is left.
+        assertEquals(new SError("Evaluation ran out of steps"), eval(spin + "(def g (lambda () 1))"
+                + " (eval/with-budget 10 60000 (list (eval/with-budget 5 60000 (spin 0)) (g) (g) (g) (g) (g) (g)))", engine));
+        assertEquals(new SNumber(1), eval(spin + "(def g (lambda () 1))"
+                + " (eval/with-budget 10 60000 (list/nth (list (eval/with-budget 5 60000 (spin 0)) (g) (g) (g) (g)) 1))", engine));
+        assertEquals(new SError("Evaluation ran out of steps"), eval(spin + "(eval/with-budget 5 60000 (eval/with-budget 1000 60000 (spin 0)))", engine));
+        assertEquals(new SNumber(3), eval(spin + "(eval/with-budget 5 60000 (spin 0)) (def g (lambda (n) n)) (g 3)", engine));
+    }
+
+    @ParameterizedTest
+    @EnumSource(Interpreter.Engine.class)
+    void withBudget_expectStackOverflowReported(Interpreter.Engine engine) {
+        var deep = "(def deep (lambda (n) (number/add 1 (deep n)))) ";
+        assertEquals(new SError("Evaluation ran out of stack"), eval(deep + "(eval/with-budget 100000000000 60000 (deep 0))", engine));
+        assertEquals(new SNumber(3), eval(deep + "(eval/with-budget 100000000000 60000 (deep 0)) (number/add 1 2)", engine));
+    }
+
+    @Test
+    void withBudget_expectDeadlineKept() {
+        var engine = Interpreter.Engine.COMPILED;
+        long start = System.nanoTime();
+        assertEquals(new SError("Evaluation ran out of time"),
+                eval("(def spin (lambda (n) (spin (number/add n 1)))) (eval/with-budget 100000000000 50 (spin 0))", engine));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+    }
+
+    @Test
+    void evalWithBudget_expectErrorOnceUsedUp() {
+        var interpreter = new Interpreter(Path.of("."));
+        var context = interpreter.createSContext();
+        interpreter.eval(parse("(def spin (lambda (n) (spin n)))"), context);
+        var call = parse("(spin 0)");
+        assertEquals(new SError("Evaluation ran out of steps"), interpreter.eval(call, context, new Budget(10_000, 60_000)));
+        assertEquals(new SNumber(2), interpreter.eval(parse("(number/add 1 1)"), context, new Budget(0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> new Budget(-1, 0));
+    }
+
+    @Test
+    void interrupted_expectEndlessLoopStopped() throws InterruptedException {
+        var failure = new AtomicReference<Throwable>();
+        var thread = Thread.ofVirtual().start(() -> {
+            try {
+                eval("(def spin (lambda (n) (spin (number/add n 1)))) (spin 0)", Interpreter.Engine.COMPILED);
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        Thread.sleep(50);
+        thread.interrupt();
+        assertTrue(thread.join(Duration.ofSeconds(5)));
+        assertInstanceOf(CancellationException.class, failure.get());
+    }
+
+    @Test
+    void tailCalls_expectConstantStack() {
+        var engine = Interpreter.Engine.COMPILED;
+        assertEquals(new SText("done"), eval("(def loop (lambda (n) (if (isEqual n 0) 'done' (loop (number/sub n 1))))) (loop 1000000)", engine));
+        assertEquals(Interpreter.TRUE, eval("""
+                (def even (lambda (n) (cond ((isEqual n 0) true) (true (odd (number/sub n 1))))))
+                (def odd (lambda (n) (if (isEqual n 0) false (even (number/sub n 1)))))
+                (even 100000)""", engine));
+        assertEquals(new SError("Invalid number of arguments"), eval("(def f (lambda (n) (if (isEqual n 0) 0 (f n 1)))) (f 1)", engine));
+    }
+
+    /**
+     * Runs every case once on each {@link Interpreter.Engine}, which must agree.
+     */
+    private static Stream<Arguments> onEachEngine(Stream<Arguments> cases) {
+        return cases.flatMap(arguments -> Arrays.stream(Interpreter.Engine.values()).map(engine -> {
+            var values = Arrays.copyOf(arguments.get(), arguments.get().length + 1);
+            values[values.length - 1] = engine;
+            return Arguments.of(values);
+        }));
+    }
+
+    private static SExpression parse(String input) {
+        return new Parser().parse(new Lexer().lex(input));
+    }
+
+    private static SExpression eval(String input, Interpreter.Engine engine) {
         var importBaseDirectory = Path.of(System.getProperty("user.dir"));
 
         var toEval = new Parser().parseAll(new Lexer().lex(input));
-        Interpreter interpreter = new Interpreter(importBaseDirectory);
+        Interpreter interpreter = new Interpreter(importBaseDirectory, new RandomStreams(), engine);
         var context = interpreter.createSContext();
 
         SExpression result = null;
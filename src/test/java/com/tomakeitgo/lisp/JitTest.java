@@ -0,0 +1,147 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.dice.RandomStreams;
+import com.tomakeitgo.lisp.SExpression.*;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JitTest {
+    // Calls f with each of n - 1 down to 0 and lists what it returns from 0 up, so f can be called past the threshold.
+    private static final String EACH = "(def each (lambda (n acc) (if (isEqual n 0) acc (each (number/sub n 1) (list/prepend acc (f (number/sub n 1)))))))";
+    private static final int CALLS = Jit.THRESHOLD * 2;
+
+    private final Interpreter interpreter = new Interpreter(Path.of("."), new RandomStreams(), Interpreter.Engine.COMPILED);
+    private final SContext context = interpreter.createSContext();
+
+    @Test
+    void hotLambda_expectCompiled() {
+        eval("(def fib (lambda (n) (if (number/lt n 2) n (number/add (fib (number/sub n 1)) (fib (number/sub n 2))))))");
+        assertEquals(SNumber.of(6765), eval("(fib 20)"));
+        assertTrue(lambda("fib").isJitted());
+        assertEquals(SNumber.of(832040), eval("(fib 30)"));
+    }
+
+    @Test
+    void compiledBody_expectSameResultsAsTreeWalker() {
+        var bodies = new String[]{
+                "(lambda (n) (cond ((number/lt n 10) 'small') ((isEqual (number/mod n 2) 0) 'even') (true 'odd')))",
+                "(lambda (n) (list (and (number/gt n 5) (number/lt n 50)) (or (isEqual n 3) (number/gte n 1990))))",
+                "(lambda (n) (if (isEqual n 7) (number/add 'seven' n) (number/div n 4)))",
+                "(lambda (n) (def seen n) (list/prepend (list seen) (number/mul n n)))",
+                "(lambda (n) ((lambda (m) (number/add m n)) 100))",
+                "(lambda args (list/first args))",
+                "(lambda (n) (eval (quote (def n 5))) (number/add n 1))",
+                "(lambda (n) (isEqual n (number/sub n 0) 'three arguments'))",
+                "(lambda (n) (unknown n))",
+                "(lambda (n) (n))",
+        };
+        for (String body : bodies) {
+            var program = EACH + " (def f " + body + ") (each " + CALLS + " (list))";
+            assertEquals(eval(program, Interpreter.Engine.TREE_WALKING), eval(program), body);
+            assertTrue(lambda("f").isJitted(), body);
+        }
+    }
+
+    @Test
+    void closure_expectCompiledAgainstItsFrames() {
+        var program = EACH + " (def adder (lambda (x) (lambda (n) (number/add n x)))) (def f (adder 1000))";
+        assertEquals(eval(program + " (each 2000 (list))", Interpreter.Engine.TREE_WALKING), eval(program + " (each 2000 (list))"));
+        assertTrue(lambda("f").isJitted());
+        assertEquals(SNumber.of(1005), eval("(f 5)"));
+    }
+
+    @Test
+    void redefinedGlobal_expectNewDefinitionUsed() {
+        eval("(def fib (lambda (n) (if (number/lt n 2) n (number/add (fib (number/sub n 1)) (fib (number/sub n 2))))))");
+        eval("(fib 20)");
+        assertTrue(lambda("fib").isJitted());
+
+        eval("(def number/add number/sub)");
+        assertEquals(SNumber.of(1), eval("(fib 20)"));
+
+        eval("(fib 20) (def number/lt (lambda (a b) true))");
+        assertEquals(SNumber.of(20), eval("(fib 20)"));
+
+        eval("(fib 20) (fib 20) (def if cond)");
+        assertEquals(eval("(def if cond) (def fib (lambda (n) (if (number/lt n 2) n 0))) (fib 20)", Interpreter.Engine.TREE_WALKING),
+                eval("(fib 20)"));
+    }
+
+    @Test
+    void globalRedefinedWhileRunning_expectRestOfBodyUsesIt() {
+        var program = EACH + " (def step (lambda (n) (number/add n 1)))"
+                + " (def f (lambda (n) (if (isEqual n 10) (def step (lambda (n) (number/sub n 1))) n) (step n)))"
+                + " (each " + CALLS + " (list))";
+        var expected = eval(program, Interpreter.Engine.TREE_WALKING);
+        assertEquals(expected, eval(program));
+        assertEquals(SNumber.of(9), ((SList) expected).value().get(10));
+    }
+
+    @Test
+    void globalHiddenInEnclosingScope_expectHidingDefinitionUsed() {
+        var scope = context.copy();
+        eval("(def helper (lambda (n) n))");
+        eval(EACH + " (def f (lambda (n) (helper n))) (each " + CALLS + " (list))", scope);
+        var f = (Lambda) scope.find(SAtom.of("f"));
+        assertTrue(f.isJitted());
+
+        scope.register("helper", new Lambda(((SList) parse("((n) 'hidden')")).value(), scope));
+        assertEquals(new SText("hidden"), eval("(f 1)", scope));
+        assertFalse(f.isJitted());
+    }
+
+    @Test
+    void lambdaThatKeepsRedefiningWhatItCalls_expectLeftToItsNodes() {
+        eval("(def g (lambda (n) n))");
+        eval("(def f (lambda (n) (g n) (def g (lambda (n) n)) n))");
+        eval(EACH);
+        for (int i = 0; i < Jit.MAX_DEOPTIMIZATIONS + 1; i++) {
+            eval("(each " + CALLS + " (list))");
+        }
+        assertFalse(lambda("f").isJitted());
+        assertEquals(SNumber.of(4), eval("(f 4)"));
+    }
+
+    private Lambda lambda(String name) {
+        return (Lambda) context.find(SAtom.of(name));
+    }
+
+    private SExpression eval(String input) {
+        return eval(input, context);
+    }
+
+    private SExpression eval(String input, SContext scope) {
+        SExpression result = null;
+        for (SExpression expression : new Parser().parseAll(new Lexer().lex(input))) {
+            result = interpreter.eval(expression, scope);
+        }
+        return result;
+    }
+
+    private static SExpression parse(String input) {
+        return new Parser().parse(new Lexer().lex(input));
+    }
+
+    // The tree walker recurses on the Java stack for every call, so it gets a thread with room for that.
+    private static SExpression eval(String input, Interpreter.Engine engine) {
+        var result = new AtomicReference<SExpression>();
+        var thread = new Thread(null, () -> {
+            var interpreter = new Interpreter(Path.of("."), new RandomStreams(), engine);
+            var context = interpreter.createSContext();
+            for (SExpression expression : new Parser().parseAll(new Lexer().lex(input))) {
+                result.set(interpreter.eval(expression, context));
+            }
+        }, "tree-walker", 1L << 30);
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+        return result.get();
+    }
+}
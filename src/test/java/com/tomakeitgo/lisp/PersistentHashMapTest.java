@@ -0,0 +1,139 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.SNumber;
+import com.tomakeitgo.lisp.SExpression.SText;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHashMapTest {
+
+    @Test
+    void with_expectSameEntriesAsHashMap() {
+        var expected = new HashMap<SExpression, SExpression>();
+        var map = PersistentHashMap.EMPTY;
+        var random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            var key = SNumber.of(random.nextInt(20_000));
+            expected.put(key, SNumber.of(i));
+            map = map.with(key, SNumber.of(i));
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+        for (var entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertNull(map.get(SNumber.of(-1)));
+        assertFalse(map.containsKey(new SText("0")));
+    }
+
+    @Test
+    void without_expectOnlyThatKeyRemoved() {
+        var keys = texts(5_000);
+        var map = PersistentHashMap.EMPTY;
+        for (SExpression key : keys) {
+            map = map.with(key, key);
+        }
+        var expected = new HashMap<SExpression, SExpression>(map);
+        for (int i = 0; i < keys.size(); i += 3) {
+            map = map.without(keys.get(i));
+            expected.remove(keys.get(i));
+        }
+        assertEquals(expected, map);
+        assertEquals(expected.size(), map.size());
+        for (SExpression key : keys) {
+            map = map.without(key);
+        }
+        assertSame(PersistentHashMap.EMPTY, map);
+    }
+
+    @Test
+    void with_expectEarlierVersionsUnchanged() {
+        var small = PersistentHashMap.EMPTY.with(SNumber.of(1), SNumber.of(1)).with(SNumber.of(2), SNumber.of(2));
+        var larger = small.with(SNumber.of(3), SNumber.of(3));
+        var replaced = small.with(SNumber.of(1), SNumber.of(10));
+        var smaller = small.without(SNumber.of(2));
+
+        assertEquals(2, small.size());
+        assertEquals(SNumber.of(1), small.get(SNumber.of(1)));
+        assertEquals(3, larger.size());
+        assertEquals(SNumber.of(10), replaced.get(SNumber.of(1)));
+        assertEquals(1, smaller.size());
+        assertTrue(small.containsKey(SNumber.of(2)));
+        assertSame(small, small.with(SNumber.of(1), SNumber.of(1)));
+        assertSame(small, small.without(SNumber.of(5)));
+    }
+
+    @Test
+    void collidingHashes_expectEveryKeyKept() {
+        // "Aa" and "BB" have the same hash, so every string of them of one length collides.
+        var keys = new ArrayList<SExpression>();
+        for (int bits = 0; bits < 64; bits++) {
+            var text = new StringBuilder();
+            for (int i = 0; i < 6; i++) {
+                text.append((bits >> i & 1) == 0 ? "Aa" : "BB");
+            }
+            keys.add(new SText(text.toString()));
+        }
+        var map = PersistentHashMap.EMPTY.with(SNumber.of(0), SNumber.of(0));
+        for (int i = 0; i < keys.size(); i++) {
+            map = map.with(keys.get(i), SNumber.of(i));
+        }
+        assertEquals(65, map.size());
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(SNumber.of(i), map.get(keys.get(i)));
+        }
+        assertNull(map.get(new SText("AaAaAaAaAaAa ")));
+
+        for (int i = 0; i < keys.size(); i += 2) {
+            map = map.without(keys.get(i));
+        }
+        assertEquals(33, map.size());
+        assertNull(map.get(keys.get(0)));
+        assertEquals(SNumber.of(1), map.get(keys.get(1)));
+        assertEquals(SNumber.of(0), map.get(SNumber.of(0)));
+    }
+
+    @Test
+    void entrySet_expectEachEntryOnce() {
+        var keys = texts(3_000);
+        var map = PersistentHashMap.EMPTY;
+        for (SExpression key : keys) {
+            map = map.with(key, key);
+        }
+        var seen = new HashSet<SExpression>();
+        for (var entry : map.entrySet()) {
+            assertEquals(entry.getKey(), entry.getValue());
+            assertTrue(seen.add(entry.getKey()));
+        }
+        assertEquals(new HashSet<>(keys), seen);
+        assertFalse(PersistentHashMap.EMPTY.entrySet().iterator().hasNext());
+    }
+
+    @Test
+    void set_expectElementsOnce() {
+        var set = PersistentHashSet.EMPTY.with(SNumber.of(1)).with(new SText("a")).with(SNumber.of(1));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(new SText("a")));
+        assertSame(set, set.with(SNumber.of(1)));
+        assertEquals(new HashSet<>(List.of(SNumber.of(1))), set.without(new SText("a")));
+        assertEquals(set, PersistentHashSet.EMPTY.with(new SText("a")).with(SNumber.of(1)));
+        assertEquals(2, set.size());
+    }
+
+    private static List<SExpression> texts(int count) {
+        var texts = new ArrayList<SExpression>();
+        for (int i = 0; i < count; i++) {
+            texts.add(new SText("key" + i));
+        }
+        return texts;
+    }
+}
@@ -0,0 +1,64 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.SNumber;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentVectorTest {
+
+    @Test
+    void append_expectEveryElementAcrossLevels() {
+        var expected = new ArrayList<SExpression>();
+        var vector = PersistentVector.EMPTY;
+        // Past 32 * 32 + 32 the tree grows a third level.
+        for (int i = 0; i < 40_000; i++) {
+            vector = vector.append(SNumber.of(i));
+            expected.add(SNumber.of(i));
+        }
+        assertEquals(expected, vector);
+        assertEquals(SNumber.of(33_333), vector.get(33_333));
+        assertThrows(IndexOutOfBoundsException.class, () -> PersistentVector.EMPTY.get(0));
+    }
+
+    @Test
+    void append_expectEarlierVersionsUnchanged() {
+        var small = PersistentVector.of(numbers(32));
+        var larger = small.append(SNumber.of(32));
+        var other = small.append(SNumber.of(-1));
+        assertEquals(numbers(32), small);
+        assertEquals(numbers(33), larger);
+        assertEquals(SNumber.of(-1), other.get(32));
+    }
+
+    @Test
+    void of_expectSameAsAppending() {
+        for (int size : new int[]{0, 1, 31, 32, 33, 64, 1056, 1057, 5000}) {
+            var appended = PersistentVector.EMPTY.appendAll(numbers(size));
+            var built = PersistentVector.of(numbers(size));
+            assertEquals(appended, built, "size " + size);
+            assertEquals(numbers(size + 1), built.append(SNumber.of(size)), "size " + size);
+        }
+    }
+
+    @Test
+    void drop_expectViewFromIndex() {
+        var vector = PersistentVector.of(numbers(100));
+        var dropped = vector.drop(1).drop(40);
+        assertEquals(numbers(100).subList(41, 100), dropped);
+        assertEquals(SNumber.of(100), dropped.append(SNumber.of(100)).get(59));
+        assertEquals(List.of(), vector.drop(100));
+        assertThrows(IndexOutOfBoundsException.class, () -> vector.drop(101));
+    }
+
+    private static List<SExpression> numbers(int count) {
+        var numbers = new ArrayList<SExpression>();
+        for (int i = 0; i < count; i++) {
+            numbers.add(SNumber.of(i));
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,76 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.SNumber;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SNumberTest {
+    private static final List<String> VALUES = List.of(
+            "0", "1", "-1", "2", "-7", "7", "1023", "1024", "-128", "-129", "3.5", "2.0", "0.1",
+            "9223372036854775807", "-9223372036854775808", "9223372036854775806", "4611686018427387904",
+            "3037000500", "-3037000500", "100000000000000000000", "1E+3");
+
+    @Test
+    void arithmetic_expectSameAsBigDecimal() {
+        check(SNumber::add, (a, b) -> a.add(b, MathContext.DECIMAL128));
+        check(SNumber::sub, (a, b) -> a.subtract(b, MathContext.DECIMAL128));
+        check(SNumber::mul, (a, b) -> a.multiply(b, MathContext.DECIMAL128));
+        check(SNumber::div, (a, b) -> a.divide(b, MathContext.DECIMAL128));
+        check(SNumber::mod, (a, b) -> a.remainder(b, MathContext.DECIMAL128));
+        check(SNumber::divInt, (a, b) -> a.divideToIntegralValue(b, MathContext.DECIMAL128));
+    }
+
+    @Test
+    void comparisons_expectSameAsBigDecimal() {
+        for (String x : VALUES) {
+            for (String y : VALUES) {
+                var a = new SNumber(new BigDecimal(x));
+                var b = new SNumber(new BigDecimal(y));
+                int expected = new BigDecimal(x).compareTo(new BigDecimal(y));
+                assertEquals(expected < 0 ? Interpreter.TRUE : Interpreter.FALSE, a.lt(b), x + " < " + y);
+                assertEquals(expected <= 0 ? Interpreter.TRUE : Interpreter.FALSE, a.lte(b), x + " <= " + y);
+                assertEquals(expected > 0 ? Interpreter.TRUE : Interpreter.FALSE, a.gt(b), x + " > " + y);
+                assertEquals(expected >= 0 ? Interpreter.TRUE : Interpreter.FALSE, a.gte(b), x + " >= " + y);
+            }
+        }
+    }
+
+    @Test
+    void equality_expectScaleStillMatters() {
+        assertEquals(new SNumber(2), new SNumber(new BigDecimal("2")));
+        assertEquals(new SNumber(2).hashCode(), new SNumber(new BigDecimal("2")).hashCode());
+        assertEquals(SNumber.of(Long.MAX_VALUE), new SNumber(new BigDecimal("9223372036854775807")));
+        assertNotEquals(new SNumber(2), new SNumber(new BigDecimal("2.0")));
+        assertNotEquals(new SNumber(1000), new SNumber(new BigDecimal("1E+3")));
+        assertEquals("2", new SNumber(new BigDecimal("2.0")).toString());
+        assertEquals("1000", new SNumber(new BigDecimal("1E+3")).toString());
+        assertSame(SNumber.of(7), SNumber.of(7));
+    }
+
+    private static void check(BiFunction<SNumber, SNumber, SExpression> operation, BiFunction<BigDecimal, BigDecimal, BigDecimal> reference) {
+        for (String x : VALUES) {
+            for (String y : VALUES) {
+                var a = new BigDecimal(x);
+                var b = new BigDecimal(y);
+                BigDecimal expected;
+                try {
+                    expected = reference.apply(a, b);
+                } catch (ArithmeticException e) {
+                    assertThrows(ArithmeticException.class, () -> operation.apply(new SNumber(a), new SNumber(b)), x + ", " + y);
+                    continue;
+                }
+                var actual = operation.apply(new SNumber(a), new SNumber(b));
+                assertEquals(new SNumber(expected), actual, x + ", " + y);
+                assertEquals(expected.stripTrailingZeros().toPlainString(), actual.toString(), x + ", " + y);
+                assertEquals(0, expected.compareTo(((SNumber) actual).value()), x + ", " + y);
+                assertEquals(expected.scale(), ((SNumber) actual).value().scale(), x + ", " + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.tomakeitgo.lisp;
+
+import com.tomakeitgo.lisp.SExpression.SAtom;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+
+    @Test
+    void intern_expectSameInstance() {
+        assertSame(SymbolTable.intern("symbol-table-test"), SAtom.of("symbol-table-test"));
+        assertSame(Interpreter.TRUE, new Parser().parse(new Lexer().lex("true")));
+    }
+
+    @Test
+    void constructedAtom_expectEqualToInterned() {
+        var atom = new SAtom("symbol-table-constructed");
+        var interned = SAtom.of("symbol-table-constructed");
+        assertNotSame(interned, atom);
+        assertEquals(interned, atom);
+        assertEquals(interned.hashCode(), atom.hashCode());
+        assertEquals(interned.id(), atom.id());
+        assertNotEquals(SAtom.of("symbol-table-other"), atom);
+    }
+
+    @Test
+    void atom_expectLookupById() {
+        var atom = SAtom.of("symbol-table-by-id");
+        assertSame(atom, SymbolTable.atom(atom.id()));
+        assertTrue(atom.id() < SymbolTable.size());
+        assertThrows(IllegalArgumentException.class, () -> SymbolTable.atom(SymbolTable.size()));
+        assertThrows(IllegalArgumentException.class, () -> SymbolTable.atom(-1));
+    }
+
+    @Test
+    void concurrentInterning_expectOneAtomPerName() throws InterruptedException {
+        var first = new ConcurrentHashMap<String, SAtom>();
+        var mismatches = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    var name = "symbol-table-concurrent-" + i;
+                    var atom = SAtom.of(name);
+                    var previous = first.putIfAbsent(name, atom);
+                    if (previous != null && previous != atom) mismatches.incrementAndGet();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, mismatches.get());
+        assertEquals(1000, first.values().stream().mapToInt(SAtom::id).distinct().count());
+    }
+}